@@ -0,0 +1,13 @@
+package org.opencv.samples.colorblobdetect;
+
+import org.opencv.core.Mat;
+
+/**
+ * Finds the coins of a blurred gray frame.
+ * Implementations write the result in the same layout used by Imgproc.HoughCircles:
+ * a 1 x N CV_32FC3 Mat with (x, y, radius) per coin, empty when nothing was found.
+ */
+public interface CircleDetector {
+
+    public void detect(Mat gray, Mat circles);
+}
@@ -0,0 +1,168 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+
+/**
+ * Classifies the coins of a frame in parallel: every coin (crop, mask and colour
+ * statistics) is a task of a bounded pool, and the measured coins are merged back
+ * in detection order and handed to the CoinClassifier in a single batch.
+ * The parallelism is bounded by the pool only: OpenCV's thread count is process wide
+ * and shared with the detection, so it is left alone.
+ */
+public class ClassificationEngine {
+
+    public interface ClassificationListener {
+        /**
+         * Called from the engine thread once all the coins of a frame are classified
+         * @param results - one result per circle, in detection order
+         */
+        public void onCoinsClassified(CoinResult[] results);
+
+        /**
+         * Called from the engine thread instead of onCoinsClassified when the frame
+         * could not be classified
+         * @param error - what the coin tasks or the classifier threw
+         */
+        public void onClassificationFailed(RuntimeException error);
+    }
+
+    //tasks waiting for a pool thread; when full the submitting thread runs the coin itself
+    private static final int QUEUE_SIZE = 32;
+
+    private ResultProcessor mProcessor;
+    private ExecutorService mCoinExecutor;
+    private ExecutorService mRequestExecutor;
+    private int mPoolSize;
+
+    public ClassificationEngine(ResultProcessor processor, int poolSize) {
+        mProcessor = processor;
+        mPoolSize = poolSize;
+        mCoinExecutor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new NamedThreadFactory("CoinClassifier"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        mRequestExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("CoinClassification"));
+    }
+
+    public ClassificationEngine(ResultProcessor processor) {
+        this(processor, Runtime.getRuntime().availableProcessors());
+    }
+
+    public CoinResult[] classify(Mat frame, Mat circles) {
+        return classify(frame, null, circles);
+    }
+
+    /* Classifies all the coins of circles and blocks until they are done.
+     * nv21 is the camera buffer of the frame, or null to take the colours from the
+     * RGBA frame. The frame must not change until it returns.
+     */
+    public CoinResult[] classify(Mat frame, byte[] nv21, Mat circles) {
+        int count = circles.cols();
+        CoinResult[] results = new CoinResult[count];
+        if (count == 0)
+            return results;
+
+        float[] circleData = HoughCircleDetector.readCircles(circles, null);
+        //colour statistics computed once for the whole frame, read by all the coin tasks
+        FrameColorStats stats = mProcessor.createColorStats(frame, nv21);
+        try {
+            List<Future<CoinResult>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                futures.add(mCoinExecutor.submit(new CoinTask(frame, stats,
+                        circleData[3 * i], circleData[3 * i + 1], circleData[3 * i + 2])));
+            }
+            for (int i = 0; i < count; i++)
+                results[i] = futures.get(i).get();
+            results = mProcessor.classifyMeasured(results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new CoinResult[0];
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Coin classification failed", e.getCause());
+        } finally {
+            stats.release();
+        }
+        return results;
+    }
+
+    /* Classifies the coins on the engine thread and reports them to the listener,
+     * so the calling (UI) or camera thread is never blocked. The engine owns frame,
+     * nv21 (which may be null) and circles and releases them afterwards, whatever the
+     * outcome; the listener is always told about it.
+     */
+    public void classifyAsync(final Mat frame, final byte[] nv21, final Mat circles,
+                              final ClassificationListener listener) {
+        mRequestExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                CoinResult[] results;
+                try {
+                    results = classify(frame, nv21, circles);
+                } catch (RuntimeException e) {
+                    listener.onClassificationFailed(e);
+                    return;
+                } finally {
+                    frame.release();
+                    circles.release();
+                }
+                listener.onCoinsClassified(results);
+            }
+        });
+    }
+
+    public int getPoolSize() {
+        return mPoolSize;
+    }
+
+    public void shutdown() {
+        mRequestExecutor.shutdown();
+        mCoinExecutor.shutdown();
+    }
+
+    private class CoinTask implements Callable<CoinResult> {
+        private Mat mFrame;
+        private FrameColorStats mStats;
+        private float mX;
+        private float mY;
+        private float mRadius;
+
+        CoinTask(Mat frame, FrameColorStats stats, float x, float y, float radius) {
+            mFrame = frame;
+            mStats = stats;
+            mX = x;
+            mY = y;
+            mRadius = radius;
+        }
+
+        @Override
+        public CoinResult call() {
+            return mProcessor.measureCoin(mFrame, mStats, mX, mY, mRadius);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private String mName;
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, mName);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
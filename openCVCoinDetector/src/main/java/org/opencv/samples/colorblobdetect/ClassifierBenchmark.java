@@ -0,0 +1,124 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Headless comparison of the CoinClassifier backends on labelled coins.
+ * Every other sample trains the k-nearest model, the remaining ones are classified by
+ * both backends, one frame of FRAME_COINS coins per call like the app does.
+ * It prints the accuracy and the p50/p95 per-coin latency of each backend.
+ *
+ *   java -Djava.library.path=&lt;opencv libs&gt; -cp &lt;opencv jar&gt;:&lt;classes&gt; \
+ *       org.opencv.samples.colorblobdetect.ClassifierBenchmark &lt;samples file&gt; [k [passes]]
+ * The samples file has the format read by KNearestCoinClassifier.readSamples.
+ */
+public class ClassifierBenchmark {
+
+    private static final int DEFAULT_PASSES = 100;
+    //coins per classify call, about a full results grid
+    private static final int FRAME_COINS = 15;
+    //the samples only have features, so image based backends are not part of the comparison
+    private static final List<Mat> NO_CROPS = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ClassifierBenchmark <samples file> [k [passes]]");
+            System.exit(1);
+        }
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : KNearestCoinClassifier.DEFAULT_K;
+        int passes = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PASSES;
+
+        List<String> denominations = new ArrayList<>();
+        List<float[]> features = new ArrayList<>();
+        KNearestCoinClassifier.readSamples(new File(args[0]), denominations, features);
+
+        List<String> trainDenominations = new ArrayList<>();
+        List<float[]> trainFeatures = new ArrayList<>();
+        List<String> testDenominations = new ArrayList<>();
+        List<float[]> testFeatures = new ArrayList<>();
+        for (int i = 0; i < features.size(); i++) {
+            if (i % 2 == 0) {
+                trainDenominations.add(denominations.get(i));
+                trainFeatures.add(features.get(i));
+            } else {
+                testDenominations.add(denominations.get(i));
+                testFeatures.add(features.get(i));
+            }
+        }
+        if (testFeatures.isEmpty()) {
+            System.err.println("Need at least two samples in " + args[0]);
+            System.exit(1);
+        }
+
+        Mat trainSamples = toMat(trainFeatures);
+        CoinClassifier heuristic = new HeuristicCoinClassifier();
+        CoinClassifier knearest = new KNearestCoinClassifier(trainSamples, trainDenominations, k);
+        trainSamples.release();
+
+        System.out.println(String.format(Locale.US, "%d training samples, %d test samples, k=%d",
+                trainFeatures.size(), testFeatures.size(), k));
+        run("heuristic", heuristic, testFeatures, testDenominations, passes);
+        run("knearest", knearest, testFeatures, testDenominations, passes);
+    }
+
+    private static void run(String name, CoinClassifier classifier, List<float[]> features,
+                            List<String> expected, int passes) {
+        List<Mat> frames = new ArrayList<>();
+        for (int start = 0; start < features.size(); start += FRAME_COINS)
+            frames.add(toMat(features.subList(start, Math.min(start + FRAME_COINS, features.size()))));
+
+        String[] denominations = new String[FRAME_COINS];
+        float[] confidences = new float[FRAME_COINS];
+        long[] samples = new long[passes * frames.size()];
+        int correct = 0;
+        float confidence = 0;
+        //first pass warms up the JIT and the OpenCV buffers
+        for (int pass = -1; pass < passes; pass++) {
+            for (int i = 0; i < frames.size(); i++) {
+                Mat frame = frames.get(i);
+                long start = System.nanoTime();
+                classifier.classify(frame, NO_CROPS, denominations, confidences);
+                long elapsed = System.nanoTime() - start;
+                if (pass < 0)
+                    continue;
+
+                samples[pass * frames.size() + i] = elapsed / frame.rows();
+                if (pass == 0) {
+                    for (int j = 0; j < frame.rows(); j++) {
+                        if (denominations[j].equals(expected.get(i * FRAME_COINS + j)))
+                            correct++;
+                        confidence += confidences[j];
+                    }
+                }
+            }
+        }
+
+        Arrays.sort(samples);
+        System.out.println(String.format(Locale.US,
+                "%-10s accuracy %5.1f%%  mean confidence %.2f  per coin p50 %.1f us  p95 %.1f us",
+                name, 100.0 * correct / features.size(), confidence / features.size(),
+                FrameReplayBenchmark.percentile(samples, 0.50) / 1e3,
+                FrameReplayBenchmark.percentile(samples, 0.95) / 1e3));
+
+        for (Mat frame : frames)
+            frame.release();
+    }
+
+    private static Mat toMat(List<float[]> rows) {
+        Mat mat = new Mat(rows.size(), CoinClassifier.FEATURE_COUNT, CvType.CV_32F);
+        for (int i = 0; i < rows.size(); i++)
+            mat.put(i, 0, rows.get(i));
+        return mat;
+    }
+}
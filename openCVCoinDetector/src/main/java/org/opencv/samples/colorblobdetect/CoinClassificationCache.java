@@ -0,0 +1,191 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Remembers the decisions of the classifier by coin appearance, so tapping again
+ * with the same coins on the tray does not classify them again.
+ * A coin is keyed by a 64 bit average hash of its crop (8x8 gray, one bit per pixel
+ * brighter than the mean), a bucket of its size and a bucket of its mean colour.
+ * The hash only records the outline and shading of the disc, so the colour bucket is
+ * what keeps a copper and a silver coin of the same size apart. The exact key is looked
+ * up first; otherwise an entry of the same size and colour buckets whose hash is within
+ * MAX_HASH_DISTANCE bits matches, which absorbs the camera noise between two taps.
+ * It holds at most capacity entries and drops the least recently used one.
+ */
+public class CoinClassificationCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final int HASH_SIZE = 8;
+    //bits that may differ between two crops of the same coin
+    private static final int MAX_HASH_DISTANCE = 6;
+    //width of a size bucket, in units of the CoinClassifier size feature
+    private static final float SIZE_BUCKET = 4f;
+    //width of a colour bucket per channel: two coins whose red-green contrast differs
+    //by more than twice this value never share a bucket
+    private static final int COLOUR_BUCKET = 8;
+
+    private LinkedHashMap<Key, Entry> mEntries;
+    private int mCapacity;
+    private long mHits;
+    private long mMisses;
+
+    public CoinClassificationCache(final int capacity) {
+        mCapacity = capacity;
+        mEntries = new LinkedHashMap<Key, Entry>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > mCapacity;
+            }
+        };
+    }
+
+    public CoinClassificationCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /* Average hash of an RGBA coin crop
+     */
+    public static long appearanceHash(Mat crop) {
+        Mat gray = new Mat();
+        Mat small = new Mat();
+        Imgproc.cvtColor(crop, gray, Imgproc.COLOR_RGBA2GRAY);
+        Imgproc.resize(gray, small, new Size(HASH_SIZE, HASH_SIZE), 0, 0, Imgproc.INTER_AREA);
+        double mean = Core.mean(small).val[0];
+
+        byte[] pixels = new byte[HASH_SIZE * HASH_SIZE];
+        small.get(0, 0, pixels);
+        gray.release();
+        small.release();
+
+        long hash = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            if ((pixels[i] & 0xFF) > mean)
+                hash |= 1L << i;
+        }
+        return hash;
+    }
+
+    //bucket of a CoinClassifier size feature
+    public static int sizeBucket(float sizeFeature) {
+        return Math.round(sizeFeature / SIZE_BUCKET);
+    }
+
+    //bucket of the mean colour of a coin, packed as one int
+    public static int colourBucket(int red, int green, int blue) {
+        return (red / COLOUR_BUCKET) << 16 | (green / COLOUR_BUCKET) << 8 | (blue / COLOUR_BUCKET);
+    }
+
+    /* Returns the decision cached for a coin like this one, null if there is none
+     */
+    public synchronized Entry get(long hash, int sizeBucket, int colourBucket) {
+        Key key = new Key(hash, sizeBucket, colourBucket);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            Key nearest = null;
+            int nearestDistance = MAX_HASH_DISTANCE + 1;
+            for (Key candidate : mEntries.keySet()) {
+                int distance = Long.bitCount(candidate.mHash ^ hash);
+                if (candidate.mSizeBucket == sizeBucket && candidate.mColourBucket == colourBucket
+                        && distance < nearestDistance) {
+                    nearest = candidate;
+                    nearestDistance = distance;
+                }
+            }
+            //get() also refreshes the entry in the LRU order
+            if (nearest != null)
+                entry = mEntries.get(nearest);
+        }
+
+        if (entry == null)
+            mMisses++;
+        else
+            mHits++;
+        return entry;
+    }
+
+    public synchronized void put(long hash, int sizeBucket, int colourBucket, String denomination, float confidence) {
+        mEntries.put(new Key(hash, sizeBucket, colourBucket), new Entry(denomination, confidence));
+    }
+
+    //drops the decisions, for instance when the classifier changes
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    public synchronized double getHitRatio() {
+        long lookups = mHits + mMisses;
+        return lookups == 0 ? 0 : (double) mHits / lookups;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized String getState() {
+        return String.format(Locale.US, "%d hits, %d misses (%.0f%%), %d/%d entries",
+                mHits, mMisses, 100 * getHitRatio(), mEntries.size(), mCapacity);
+    }
+
+    /**
+     * A cached decision of the classifier
+     */
+    public static final class Entry {
+        private final String mDenomination;
+        private final float mConfidence;
+
+        Entry(String denomination, float confidence) {
+            mDenomination = denomination;
+            mConfidence = confidence;
+        }
+
+        public String getDenomination() {
+            return mDenomination;
+        }
+
+        public float getConfidence() {
+            return mConfidence;
+        }
+    }
+
+    private static final class Key {
+        private final long mHash;
+        private final int mSizeBucket;
+        private final int mColourBucket;
+
+        Key(long hash, int sizeBucket, int colourBucket) {
+            mHash = hash;
+            mSizeBucket = sizeBucket;
+            mColourBucket = colourBucket;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return mHash == key.mHash && mSizeBucket == key.mSizeBucket && mColourBucket == key.mColourBucket;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (int) (mHash ^ (mHash >>> 32)) + mSizeBucket) + mColourBucket;
+        }
+    }
+}
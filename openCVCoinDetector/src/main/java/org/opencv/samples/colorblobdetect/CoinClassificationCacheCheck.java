@@ -0,0 +1,68 @@
+package org.opencv.samples.colorblobdetect;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Headless check of CoinClassificationCache on synthetic coins.
+ * A copper and a silver disc of the same size have the same appearance hash: only
+ * their colour bucket keeps the silver one from getting the copper decision.
+ * It exits with status 1 when the cache mixes them up.
+ *
+ * It does not need a device, only the OpenCV desktop java bindings:
+ *   java -Djava.library.path=&lt;opencv libs&gt; -cp &lt;opencv jar&gt;:&lt;classes&gt; \
+ *       org.opencv.samples.colorblobdetect.CoinClassificationCacheCheck
+ */
+public class CoinClassificationCacheCheck {
+
+    private static final int[] COPPER = {184, 115, 51};
+    private static final int[] SILVER = {160, 160, 160};
+    private static final int CROP_SIZE = 80;
+    private static final int COIN_RADIUS = 30;
+    //size feature both coins are cached under
+    private static final float SIZE_FEATURE = 40;
+
+    public static void main(String[] args) {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        String error = checkHue();
+        if (error != null) {
+            System.err.println("cache: " + error);
+            System.exit(1);
+        }
+        System.out.println("cache: coins differing only in hue are kept apart");
+    }
+
+    /* Returns what went wrong, null when the check passes
+     */
+    public static String checkHue() {
+        Mat copperCrop = syntheticCoin(COPPER);
+        Mat silverCrop = syntheticCoin(SILVER);
+        long copperHash = CoinClassificationCache.appearanceHash(copperCrop);
+        long silverHash = CoinClassificationCache.appearanceHash(silverCrop);
+        copperCrop.release();
+        silverCrop.release();
+
+        int sizeBucket = CoinClassificationCache.sizeBucket(SIZE_FEATURE);
+        int copperBucket = CoinClassificationCache.colourBucket(COPPER[0], COPPER[1], COPPER[2]);
+        int silverBucket = CoinClassificationCache.colourBucket(SILVER[0], SILVER[1], SILVER[2]);
+        CoinClassificationCache cache = new CoinClassificationCache();
+        cache.put(copperHash, sizeBucket, copperBucket, "1c", 1);
+        if (cache.get(copperHash, sizeBucket, copperBucket) == null)
+            return "misses the coin it holds";
+        if (cache.get(silverHash, sizeBucket, silverBucket) != null)
+            return "serves a copper coin decision for a silver coin";
+        return null;
+    }
+
+    private static Mat syntheticCoin(int[] rgb) {
+        Mat crop = new Mat(CROP_SIZE, CROP_SIZE, CvType.CV_8UC4, new Scalar(0, 0, 0, 255));
+        Imgproc.circle(crop, new Point(CROP_SIZE / 2, CROP_SIZE / 2), COIN_RADIUS,
+                new Scalar(rgb[0], rgb[1], rgb[2], 255), -1);
+        return crop;
+    }
+}
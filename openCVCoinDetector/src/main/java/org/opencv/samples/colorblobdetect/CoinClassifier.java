@@ -0,0 +1,30 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.List;
+
+import org.opencv.core.Mat;
+
+/**
+ * Decides the denomination of coins from compact feature vectors.
+ * Every coin is one CV_32F row of FEATURE_COUNT values: the mean red, green and blue
+ * of its inner square and its radius relative to the frame height, scaled to 0-255
+ * like the colours. Backends working on the image get the coin crops as well.
+ * All the coins of a frame are classified with a single call.
+ */
+public interface CoinClassifier {
+
+    int FEATURE_RED = 0;
+    int FEATURE_GREEN = 1;
+    int FEATURE_BLUE = 2;
+    int FEATURE_SIZE = 3;
+    int FEATURE_COUNT = 4;
+
+    /**
+     * Classifies every row of features
+     * @param features - N x FEATURE_COUNT, CV_32F
+     * @param crops - N masked RGBA coin crops, as shown in the results grid
+     * @param denominations - receives the denomination code of each row, like "1c" or "2p"
+     * @param confidences - receives the confidence of each row, between 0 and 1
+     */
+    public void classify(Mat features, List<Mat> crops, String[] denominations, float[] confidences);
+}
@@ -1,10 +1,16 @@
 package org.opencv.samples.colorblobdetect;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.opencv.android.BaseLoaderCallback;
+import org.opencv.android.CameraOverlay;
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewDrawListener;
 import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewYuvFrame;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
 import org.opencv.core.Core;
@@ -38,28 +44,59 @@ import android.widget.Toast;
 import static org.opencv.imgproc.Imgproc.circle;
 
 
-public class CoinDetectorActivity extends Activity implements OnTouchListener, CvCameraViewListener2 {
+public class CoinDetectorActivity extends Activity implements OnTouchListener, CvCameraViewListener2,
+        CvCameraViewDrawListener, ClassificationEngine.ClassificationListener {
     private static final String TAG = "OCVSample::Activity";
 
     private static int setScreenWidth = 1280;
     private static int setScreenHeight = 720;
-
-    private boolean touchdetector=false;
+    private static final long DETECTION_BUDGET_MS = 40;
+    private static final String METRICS_FILE = "pipeline_latency.txt";
+    //coin classifier network and its class denominations, preferred when present
+    private static final String COIN_MODEL_FILE = "coin_classifier.pb";
+    private static final String COIN_CLASSES_FILE = "coin_classes.txt";
+    private static final Size COIN_MODEL_INPUT = new Size(64, 64);
+    //the same network bundled in res/raw, optional
+    private static final String COIN_MODEL_RESOURCE = "coin_classifier";
+    private static final String COIN_CLASSES_RESOURCE = "coin_classes";
+    private static final String MODEL_DIR = "models";
+    //denominations and diameters of the currency, to tell the coins apart by size
+    private static final String COIN_SIZES_FILE = "coin_sizes.txt";
+    //labelled coins for the k-nearest classifier, the heuristic is used without any of them
+    private static final String COIN_SAMPLES_FILE = "coin_samples.txt";
+    //tapped frames and their results screens, kept for audit
+    private static final String SNAPSHOT_DIR = "snapshots";
+    //room for the frame and the pages of a large tray
+    private static final int SNAPSHOT_QUEUE_SIZE = 8;
+
+    private volatile boolean touchdetector=false;
+    private volatile boolean mClassifying=false;
+    private volatile boolean mClassifyRequested=false;
     private boolean mIsColorSelected = false;
+    private boolean mClassifierLoaded = false;
 
     private Mat mRgba;//screenshot of camera
     private Mat showCircles;//show circles in screen
-    private Mat showResults;//image displaying results
+    //image displaying results: a finished copy handed from the UI thread to the camera thread
+    private volatile Mat showResults;
     private Mat mGray;
     private Mat circles;
     private int screenWidth;
     private int screenHeight;
 
-    ArrayList<Mat> matCollection = new ArrayList<>();
-    ArrayList<String> coinCollection = new ArrayList<>();
     private int totMoney;
 
     private ResultProcessor myResultClass;
+    private ClassificationEngine myClassificationEngine;
+    private ModelStore myModelStore;
+    private SnapshotExporter mySnapshotExporter;
+    private volatile String mSnapshotName;
+    private CoinFrameProcessor myFrameProcessor;
+    private DetectionWorker myDetectionWorker;
+    private HoughParamController myHoughController;
+    private MotionGate myMotionGate;
+    private PipelineMetrics myMetrics;
+    private CameraOverlay myOverlay;
 
     //private Scalar               mBlobColorRgba;
     //private Scalar               mBlobColorHsv;
@@ -84,6 +121,7 @@ public class CoinDetectorActivity extends Activity implements OnTouchListener, C
             switch (status) {
                 case LoaderCallbackInterface.SUCCESS: {
                     Log.i(TAG, "OpenCV loaded successfully");
+                    startClassifierLoader();
                     mOpenCvCameraView.enableView();
                     mOpenCvCameraView.setOnTouchListener(CoinDetectorActivity.this);
                 }
@@ -120,9 +158,28 @@ public class CoinDetectorActivity extends Activity implements OnTouchListener, C
         mOpenCvCameraView = (CameraBridgeViewBase) findViewById(R.id.color_blob_detection_activity_surface_view);
         mOpenCvCameraView.setVisibility(SurfaceView.VISIBLE);
         mOpenCvCameraView.setCvCameraViewListener(this);
+        mOpenCvCameraView.setCvCameraViewDrawListener(this);
+        //circles and coin count are drawn by the view over the frame, the frame is left untouched
+        myOverlay = new CameraOverlay();
+        mOpenCvCameraView.setOverlay(myOverlay);
         mOpenCvCameraView.setMaxFrameSize(setScreenWidth, setScreenHeight);
         //mOpenCvCameraView.enableFpsMeter();
         myResultClass = new ResultProcessor();
+        myClassificationEngine = new ClassificationEngine(myResultClass);
+        myModelStore = new ModelStore(this, MODEL_DIR);
+        File snapshots = getExternalFilesDir(SNAPSHOT_DIR);
+        if (snapshots != null)
+            mySnapshotExporter = new SnapshotExporter(snapshots, SNAPSHOT_QUEUE_SIZE, SnapshotExporter.POLICY_DROP);
+        myMetrics = new PipelineMetrics();
+        myFrameProcessor = new CoinFrameProcessor();
+        myFrameProcessor.setMetrics(myMetrics);
+        HoughCircleDetector hough = new HoughCircleDetector();
+        TrackingCircleDetector tracking = new TrackingCircleDetector(hough, new PyramidCircleDetector(hough),
+                TrackingCircleDetector.DEFAULT_FULL_SWEEP_INTERVAL);
+        myHoughController = new HoughParamController(tracking, hough, DETECTION_BUDGET_MS);
+        myFrameProcessor.setDetector(myHoughController);
+        myDetectionWorker = new DetectionWorker(myFrameProcessor);
+        myMotionGate = new MotionGate();
     }
 
     @Override
@@ -146,6 +203,9 @@ public class CoinDetectorActivity extends Activity implements OnTouchListener, C
 
     public void onDestroy() {
         super.onDestroy();
+        myClassificationEngine.shutdown();
+        if (mySnapshotExporter != null)
+            mySnapshotExporter.shutdown();
         if (mOpenCvCameraView != null)
             mOpenCvCameraView.disableView();
     }
@@ -162,6 +222,7 @@ public class CoinDetectorActivity extends Activity implements OnTouchListener, C
         screenWidth = getWindowManager().getDefaultDisplay().getWidth();
         screenHeight = getWindowManager().getDefaultDisplay().getHeight();
         myResultClass.prepareGameSize(width,height);
+        myDetectionWorker.start();
 
 /*        mRgba = new Mat(height, width, CvType.CV_8UC4);
         mDetector = new ColorBlobDetector();
@@ -173,68 +234,194 @@ public class CoinDetectorActivity extends Activity implements OnTouchListener, C
     }
 
     public void onCameraViewStopped() {
+        myDetectionWorker.stop();
+        Log.i(TAG, "Detection dropped " + myDetectionWorker.getDroppedFrames() + " of "
+                + myDetectionWorker.getSubmittedFrames() + " frames");
+        Log.i(TAG, "Hough controller: " + myHoughController.getState());
+        Log.i(TAG, "Motion gate skipped " + myMotionGate.getSkippedFrames() + " of "
+                + myMotionGate.getFrames() + " frames (" + Math.round(100 * myMotionGate.getSkipRatio()) + "%)");
+        Log.i(TAG, "Classification cache: " + myResultClass.getCache().getState());
+        if (mySnapshotExporter != null)
+            Log.i(TAG, "Snapshots: " + mySnapshotExporter.getState());
+        dumpMetrics();
 //        mRgba.release();
     }
 
     public Mat onCameraFrame(CvCameraViewFrame inputFrame) {
-        Mat returnFrame = new Mat();
-        mRgba = inputFrame.rgba();
-        showCircles = inputFrame.rgba();
-
-        Imgproc.cvtColor(showCircles, mGray, Imgproc.COLOR_BGRA2GRAY);
-        Imgproc.medianBlur(mGray, mGray, 5);
+        //detection works on the Y plane of the camera buffer, no color conversion needed.
+        //It runs on its own thread and static scenes are not detected again
+        long acquireStart = System.nanoTime();
+        Mat gray = inputFrame.gray();
+        long acquireNanos = System.nanoTime() - acquireStart;
+        if (myMotionGate.hasChanged(gray) && myDetectionWorker.submit(gray))
+            myMotionGate.updateReference();
+
+        //the preview is hidden by the results, keep the last RGBA frame for them
+        if(touchdetector){
+            myMetrics.record(PipelineMetrics.STAGE_ACQUIRE, acquireNanos);
+            myOverlay.clear();
+            return showResults;
+        }
 
-        Imgproc.HoughCircles(mGray, circles, Imgproc.HOUGH_GRADIENT, 1, mGray.rows() / 8,
-                100, 50, 10, 150);
+        acquireStart = System.nanoTime();
+        mRgba = inputFrame.rgba();
+        myMetrics.record(PipelineMetrics.STAGE_ACQUIRE, acquireNanos + System.nanoTime() - acquireStart);
+        showCircles = mRgba;
+        myDetectionWorker.getLatestCircles(circles);
+        //the tapped frame is taken here, while the camera buffer is valid
+        if (mClassifyRequested) {
+            mClassifyRequested = false;
+            startClassification(inputFrame);
+        }
+        myFrameProcessor.publishOverlay(myOverlay, circles, showCircles.rows());
 
-        for (int i = 0; i < circles.cols(); i++) {
-            double[] vCircle = circles.get(0, i);
+        //String myString2 = "La cantidad de dinero presente es:" + totMoney;
+        //Imgproc.putText(showCircles, myString2, new Point(10, setScreenHeight - 60), Core.FONT_HERSHEY_SIMPLEX, 1, new Scalar(200, 200, 200), 4);
 
-            Point pt = new Point(Math.round(vCircle[0]), Math.round(vCircle[1]));
-            int radius = (int) Math.round(vCircle[2]);
+        return showCircles;
+    }
 
-            circle(showCircles, pt, radius, new Scalar(255, 0, 0), 2);
-            circle(showCircles, pt, 3, new Scalar(0,0,255), 2);
+    /**
+     * Hand a copy of the frame to the classification engine. The colours are sampled
+     * from the NV21 buffer when the camera provides it
+     **/
+    private void startClassification(CvCameraViewFrame inputFrame) {
+        byte[] nv21 = null;
+        if (inputFrame instanceof CvCameraViewYuvFrame) {
+            Mat yuv = ((CvCameraViewYuvFrame) inputFrame).nv21();
+            if (yuv != null) {
+                nv21 = new byte[(int) yuv.total()];
+                yuv.get(0, 0, nv21);
+            }
         }
+        //the exporter copies the frame, encoding and writing happen on its own thread
+        mSnapshotName = "coins_" + System.currentTimeMillis();
+        if (mySnapshotExporter != null)
+            mySnapshotExporter.submit(mRgba, mSnapshotName + "_frame.jpg");
+        myClassificationEngine.classifyAsync(mRgba.clone(), nv21, circles.clone(), this);
+    }
 
+    public void onCameraFrameDrawn(long matToBitmapNanos, long blitNanos) {
+        myMetrics.record(PipelineMetrics.STAGE_MAT_TO_BITMAP, matToBitmapNanos);
+        myMetrics.record(PipelineMetrics.STAGE_BLIT, blitNanos);
+    }
 
-        String myString = "La cantidad de monedas presentes es:" + circles.cols();
-        Imgproc.putText(showCircles, myString, new Point(10, setScreenHeight - 30), Core.FONT_HERSHEY_SIMPLEX, 1, new Scalar(200, 200, 200), 4);
+    /**
+     * Load the coin classifiers once, on a thread of their own: reading and warming up
+     * the network takes too long for the UI thread. Each classifier is installed when
+     * it is ready, taps meanwhile are classified by the heuristic
+     **/
+    private void startClassifierLoader() {
+        if (mClassifierLoaded)
+            return;
+        mClassifierLoaded = true;
+
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loadCoinClassifier();
+            }
+        }, "CoinClassifierLoader");
+        loader.setDaemon(true);
+        loader.start();
+    }
 
-        //String myString2 = "La cantidad de dinero presente es:" + totMoney;
-        //Imgproc.putText(showCircles, myString2, new Point(10, setScreenHeight - 60), Core.FONT_HERSHEY_SIMPLEX, 1, new Scalar(200, 200, 200), 4);
+    /**
+     * Load the currency size table and the coin classifier network, or else train
+     * the k-nearest classifier, if their files are in the app files dir.
+     * A network bundled as raw resources is used when the files dir has none
+     **/
+    private void loadCoinClassifier() {
+        File dir = getExternalFilesDir(null);
+        File sizes = new File(dir, COIN_SIZES_FILE);
+        if (dir != null && sizes.exists()) {
+            try {
+                myResultClass.setSizeClassifier(SizeRatioClassifier.load(sizes));
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot load " + COIN_SIZES_FILE, e);
+            }
+        }
 
-        if(touchdetector==false){
-            returnFrame=showCircles;
+        long start = System.nanoTime();
+        File model = new File(dir, COIN_MODEL_FILE);
+        File classes = new File(dir, COIN_CLASSES_FILE);
+        if (dir == null || !model.exists() || !classes.exists()) {
+            model = null;
+            classes = null;
+            int modelId = getResources().getIdentifier(COIN_MODEL_RESOURCE, "raw", getPackageName());
+            int classesId = getResources().getIdentifier(COIN_CLASSES_RESOURCE, "raw", getPackageName());
+            if (modelId != 0 && classesId != 0) {
+                try {
+                    model = myModelStore.export(modelId);
+                    classes = myModelStore.export(classesId);
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot export the bundled coin classifier", e);
+                }
+            }
+        }
+        if (model != null && classes != null) {
+            try {
+                DnnCoinClassifier classifier = new DnnCoinClassifier(model.getPath(), "",
+                        DnnCoinClassifier.readDenominations(classes), COIN_MODEL_INPUT, 1.0 / 255, new Scalar(0), false);
+                myResultClass.setClassifier(classifier);
+                Log.i(TAG, "Coin classifier network loaded in " + (System.nanoTime() - start) / 1000000
+                        + " ms, warm-up profile:\n" + classifier.getPerfProfile());
+                return;
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot read " + classes, e);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Cannot load " + model, e);
+            }
         }
 
-        if(touchdetector){
-            returnFrame=showResults;
+        File samples = new File(dir, COIN_SAMPLES_FILE);
+        if (dir == null || !samples.exists())
+            return;
+        try {
+            myResultClass.setClassifier(KNearestCoinClassifier.load(samples, KNearestCoinClassifier.DEFAULT_K));
+            Log.i(TAG, "Coin classifier trained from " + samples);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot load " + COIN_SAMPLES_FILE + ", using the heuristic classifier", e);
         }
+    }
 
-        return returnFrame;
+    /**
+     * Write the latency percentiles of every stage to logcat and to the app files dir
+     **/
+    private void dumpMetrics() {
+        String summary = myMetrics.summary();
+        Log.i(TAG, "Pipeline latency:\n" + summary);
+
+        File dir = getExternalFilesDir(null);
+        if (dir == null)
+            return;
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(new File(dir, METRICS_FILE));
+            writer.write(summary);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot write " + METRICS_FILE, e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot close " + METRICS_FILE, e);
+                }
+            }
+        }
     }
 
     public boolean onTouch(View v, MotionEvent event) {
-        Mat circles2=circles.clone();
-        Mat mRgba2=mRgba.clone();
-
         if(touchdetector==false) {
-            if(circles.empty()==false) {
-                for (int i = 0; i < circles2.cols(); i++) {
-                    matCollection.add(myResultClass.getFrame(mRgba2, circles2, i));
-
-                    String prediction=myResultClass.getPrediction();
-                    coinCollection.add(prediction);
-
-                }
+            //the next camera frame is classified off the UI thread, the results show up when ready
+            if(!mClassifying) {
+                mClassifying = true;
+                mClassifyRequested = true;
             }
-            showResults=myResultClass.assemblyFrame(matCollection,coinCollection);
-            matCollection.clear();
-            coinCollection.clear();
-            circles.empty();
-
-            touchdetector = true;
+        }else if(myResultClass.hasNextPage()){
+            //large trays do not fit in one screen, every tap shows the next page
+            showResultsScreen(myResultClass.nextPage());
         }else{
             touchdetector = false;
         }
@@ -242,5 +429,65 @@ public class CoinDetectorActivity extends Activity implements OnTouchListener, C
         return false; // don't need subsequent touch events
     }
 
+    /**
+     * Called on the engine thread: the results screen belongs to the UI thread, like the
+     * taps that page through it, so the results are handed over to it
+     **/
+    public void onCoinsClassified(final CoinResult[] results) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                showCoins(results);
+            }
+        });
+    }
+
+    //the tap is dropped, the next one classifies a new frame
+    public void onClassificationFailed(RuntimeException error) {
+        Log.e(TAG, "Coin classification failed", error);
+        mClassifying = false;
+    }
+
+    private void showCoins(CoinResult[] results) {
+        ArrayList<Mat> matCollection = new ArrayList<>();
+        ArrayList<String> coinCollection = new ArrayList<>();
+        for (CoinResult result : results) {
+            matCollection.add(result.getCrop());
+            coinCollection.add(result.getLabel());
+        }
+        showResultsScreen(myResultClass.assemblyFrame(matCollection,coinCollection));
+        exportResults();
+
+        touchdetector = true;
+        mClassifying = false;
+    }
+
+    /**
+     * Archive every page of the results screen, the first one is shown again afterwards
+     **/
+    private void exportResults() {
+        if (mySnapshotExporter == null)
+            return;
+        int pages = myResultClass.getPageCount();
+        if (pages == 1) {
+            mySnapshotExporter.submit(showResults, mSnapshotName + "_results.png");
+            return;
+        }
+        for (int page = 0; page < pages; page++) {
+            mySnapshotExporter.submit(myResultClass.showPage(page),
+                    mSnapshotName + "_results_" + (page + 1) + "of" + pages + ".png");
+        }
+        myResultClass.showPage(0);
+    }
+
+    /**
+     * The results view draws every page into the same Mat, so the camera thread gets a
+     * finished copy of it. The previous copy is left to the garbage collector, the camera
+     * thread may still be converting it
+     **/
+    private void showResultsScreen(Mat screen) {
+        showResults = screen.clone();
+    }
+
 
 }
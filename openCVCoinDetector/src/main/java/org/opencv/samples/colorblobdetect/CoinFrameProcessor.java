@@ -0,0 +1,136 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.Arrays;
+
+import org.opencv.android.CameraOverlay;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * This class runs the coin detection chain on a single camera frame:
+ * gray conversion (skipped for the Y plane), median blur, circle detection
+ * and the circles overlay, published as shapes for the camera view to draw.
+ * Besides OpenCV it only uses CameraOverlay, which has no Android dependency,
+ * so it can also be driven outside of Android (see FrameReplayBenchmark).
+ */
+public class CoinFrameProcessor {
+
+    public static final int STAGE_CONVERT = 0;
+    public static final int STAGE_BLUR = 1;
+    public static final int STAGE_DETECT = 2;
+    public static final int STAGE_OVERLAY = 3;
+    public static final int STAGE_COUNT = 4;
+
+    private static final String COUNT_LABEL = "La cantidad de monedas presentes es:";
+    //ARGB colours, and a text size close to the Hershey font at scale 1
+    private static final int ARGB_CIRCLE = 0xFFFF0000;
+    private static final int ARGB_CENTER = 0xFF0000FF;
+    private static final int ARGB_LABEL = 0xFFC8C8C8;
+    private static final float LABEL_TEXT_SIZE = 32;
+
+    private CircleDetector mDetector;
+    private PipelineMetrics mMetrics;
+    private Mat mGray;
+    private Mat mCircles;
+    private long[] mStageNanos;
+
+    //overlay buffers, reused between frames
+    private float[] mOverlayData;
+    private String[] mCountLabels;
+
+    public CoinFrameProcessor() {
+        mDetector = new HoughCircleDetector();
+        mGray = new Mat();
+        mCircles = new Mat();
+        mStageNanos = new long[STAGE_COUNT];
+        mCountLabels = new String[16];
+    }
+
+    /* Runs the detection stages, the result is available with getCircles().
+     * The frame is either RGBA or already gray, like the camera Y plane: then the
+     * color conversion is skipped and the blur reads the frame directly.
+     */
+    public void detectCoins(Mat frame) {
+        long start = System.nanoTime();
+        Mat source = frame;
+        if (frame.channels() != 1) {
+            Imgproc.cvtColor(frame, mGray, Imgproc.COLOR_BGRA2GRAY);
+            source = mGray;
+        }
+        long converted = System.nanoTime();
+        Imgproc.medianBlur(source, mGray, 5);
+        long blurred = System.nanoTime();
+
+        mDetector.detect(mGray, mCircles);
+        long detected = System.nanoTime();
+
+        mStageNanos[STAGE_CONVERT] = converted - start;
+        mStageNanos[STAGE_BLUR] = blurred - converted;
+        mStageNanos[STAGE_DETECT] = detected - blurred;
+
+        if (mMetrics != null) {
+            if (source != frame)
+                mMetrics.record(PipelineMetrics.STAGE_CONVERT, mStageNanos[STAGE_CONVERT]);
+            mMetrics.record(PipelineMetrics.STAGE_BLUR, mStageNanos[STAGE_BLUR]);
+            mMetrics.record(PipelineMetrics.STAGE_DETECT, mStageNanos[STAGE_DETECT]);
+        }
+    }
+
+    /* Publishes the circles and the coin count as overlay shapes instead of drawing them
+     * into the frame, so the frame is never modified and the cost depends on the number
+     * of coins only. The count label is placed 30 pixels above the bottom of a frame
+     * of frameHeight rows.
+     * It does not allocate once the label of the coin count is cached, so it is cheap
+     * to call on the camera thread for every preview frame.
+     */
+    public void publishOverlay(CameraOverlay overlay, Mat circles, int frameHeight) {
+        long start = System.nanoTime();
+        int count = circles.cols();
+        mOverlayData = HoughCircleDetector.readCircles(circles, mOverlayData);
+
+        overlay.beginFrame();
+        for (int i = 0; i < count; i++) {
+            float x = Math.round(mOverlayData[3 * i]);
+            float y = Math.round(mOverlayData[3 * i + 1]);
+            overlay.addCircle(x, y, Math.round(mOverlayData[3 * i + 2]), ARGB_CIRCLE, 2);
+            overlay.addCircle(x, y, 3, ARGB_CENTER, 2);
+        }
+        overlay.addText(getCountLabel(count), 10, frameHeight - 30, LABEL_TEXT_SIZE, ARGB_LABEL);
+        overlay.publish();
+
+        mStageNanos[STAGE_OVERLAY] = System.nanoTime() - start;
+        if (mMetrics != null)
+            mMetrics.record(PipelineMetrics.STAGE_OVERLAY, mStageNanos[STAGE_OVERLAY]);
+    }
+
+    private String getCountLabel(int count) {
+        if (count >= mCountLabels.length)
+            mCountLabels = Arrays.copyOf(mCountLabels, 2 * count);
+        if (mCountLabels[count] == null)
+            mCountLabels[count] = COUNT_LABEL + count;
+        return mCountLabels[count];
+    }
+
+    public void setDetector(CircleDetector detector) {
+        mDetector = detector;
+    }
+
+    //histograms that every processed frame is recorded into, null to disable
+    public void setMetrics(PipelineMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public CircleDetector getDetector() {
+        return mDetector;
+    }
+
+    //circles found in the last processed frame (1 x N, CV_32FC3)
+    public Mat getCircles() {
+        return mCircles;
+    }
+
+    //time spent by each stage in the last processed frame
+    public long getStageNanos(int stage) {
+        return mStageNanos[stage];
+    }
+}
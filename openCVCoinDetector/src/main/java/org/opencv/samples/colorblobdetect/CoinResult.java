@@ -0,0 +1,93 @@
+package org.opencv.samples.colorblobdetect;
+
+import org.opencv.core.Mat;
+
+/**
+ * Classification of a single coin: where it is, what it looks like and what it is worth.
+ * Results are created by ResultProcessor and never change afterwards; the crop Mat
+ * belongs to the result and must not be modified by the callers.
+ * A coin that is measured but not classified yet has no denomination nor label.
+ */
+public final class CoinResult {
+
+    private final float mX;
+    private final float mY;
+    private final float mRadius;
+    private final Mat mCrop;
+    private final String mDenomination;
+    private final float mConfidence;
+    private final int mRed;
+    private final int mGreen;
+    private final int mBlue;
+    private final String mLabel;
+
+    public CoinResult(float x, float y, float radius, Mat crop, String denomination, float confidence,
+                      int red, int green, int blue, String label) {
+        mX = x;
+        mY = y;
+        mRadius = radius;
+        mCrop = crop;
+        mDenomination = denomination;
+        mConfidence = confidence;
+        mRed = red;
+        mGreen = green;
+        mBlue = blue;
+        mLabel = label;
+    }
+
+    //same coin, with the decision of a CoinClassifier
+    public CoinResult withDenomination(String denomination, float confidence, String label) {
+        return new CoinResult(mX, mY, mRadius, mCrop, denomination, confidence, mRed, mGreen, mBlue, label);
+    }
+
+    /* Denomination codes start with the value of the coin: the results screen adds up
+     * their first digits, so classifiers reject any other code when they are created
+     */
+    public static boolean isDenomination(String code) {
+        return code != null && !code.isEmpty() && Character.isDigit(code.charAt(0));
+    }
+
+    public float getX() {
+        return mX;
+    }
+
+    public float getY() {
+        return mY;
+    }
+
+    public float getRadius() {
+        return mRadius;
+    }
+
+    //masked coin scaled to the size of a results cell
+    public Mat getCrop() {
+        return mCrop;
+    }
+
+    //denomination code, like "1c" or "2p"; its first digit is the value
+    public String getDenomination() {
+        return mDenomination;
+    }
+
+    //between 0 and 1
+    public float getConfidence() {
+        return mConfidence;
+    }
+
+    public int getRed() {
+        return mRed;
+    }
+
+    public int getGreen() {
+        return mGreen;
+    }
+
+    public int getBlue() {
+        return mBlue;
+    }
+
+    //text shown in the results cell
+    public String getLabel() {
+        return mLabel;
+    }
+}
@@ -0,0 +1,127 @@
+package org.opencv.samples.colorblobdetect;
+
+import org.opencv.core.Mat;
+
+/**
+ * Runs the coin detection on its own thread so the camera thread only has to
+ * draw the latest result over the preview.
+ * The worker holds at most one frame: frames submitted while it is busy are
+ * dropped (and counted) instead of queued, so the result is never older than
+ * the detection time of a single frame.
+ */
+public class DetectionWorker implements Runnable {
+
+    private CoinFrameProcessor mProcessor;
+    private Thread mThread;
+    private boolean mStopThread;
+    private boolean mBusy;
+
+    //frame copied from the camera, only touched by the worker while mBusy is set
+    private Mat mPendingFrame;
+
+    private final Object mResultLock = new Object();
+    private Mat mLatestCircles;
+    private long mSubmittedFrames;
+    private long mDroppedFrames;
+    private long mProcessedFrames;
+
+    public DetectionWorker(CoinFrameProcessor processor) {
+        mProcessor = processor;
+        mPendingFrame = new Mat();
+        mLatestCircles = new Mat();
+    }
+
+    public synchronized void start() {
+        if (mThread != null)
+            return;
+        mStopThread = false;
+        mThread = new Thread(this, "CoinDetection");
+        mThread.start();
+    }
+
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+            mStopThread = true;
+            this.notify();
+        }
+        if (thread == null)
+            return;
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                mThread = null;
+                mBusy = false;
+            }
+        }
+    }
+
+    /* Hands a frame (RGBA or the gray Y plane) to the worker. The frame is copied,
+     * so the caller can keep drawing on it and the camera can reuse its buffer.
+     * Returns false when the worker was busy and the frame was dropped.
+     */
+    public synchronized boolean submit(Mat frame) {
+        mSubmittedFrames++;
+        if (mBusy || mThread == null) {
+            mDroppedFrames++;
+            return false;
+        }
+        frame.copyTo(mPendingFrame);
+        mBusy = true;
+        this.notify();
+        return true;
+    }
+
+    @Override
+    public void run() {
+        do {
+            synchronized (this) {
+                try {
+                    while (!mBusy && !mStopThread) {
+                        this.wait();
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                if (mStopThread)
+                    break;
+            }
+
+            mProcessor.detectCoins(mPendingFrame);
+            synchronized (mResultLock) {
+                mProcessor.getCircles().copyTo(mLatestCircles);
+                mProcessedFrames++;
+            }
+
+            synchronized (this) {
+                mBusy = false;
+            }
+        } while (true);
+    }
+
+    //copies the circles of the most recent detection into circles
+    public void getLatestCircles(Mat circles) {
+        synchronized (mResultLock) {
+            mLatestCircles.copyTo(circles);
+        }
+    }
+
+    public synchronized long getSubmittedFrames() {
+        return mSubmittedFrames;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    public long getProcessedFrames() {
+        synchronized (mResultLock) {
+            return mProcessedFrames;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.dnn.Dnn;
+import org.opencv.dnn.Net;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Classifies the coins with a neural network that takes the coin crops.
+ * All the crops of a frame are stacked in one blob, so a frame costs a single
+ * forward pass whatever its number of coins. The network must output one row of
+ * class scores per coin (softmax), the classes being the denominations in order;
+ * the confidence is the score of the chosen class. A network whose number of classes
+ * does not match the denominations is rejected when it is created.
+ * It runs on the OpenCV backend on the CPU, and is warmed up when created so the
+ * first frame does not pay for the layer allocations.
+ */
+public class DnnCoinClassifier implements CoinClassifier {
+
+    //batch of the warm-up pass, about a full results grid
+    private static final int WARM_UP_COINS = 15;
+
+    private Net mNet;
+    private List<String> mDenominations;
+    private Size mInputSize;
+    private double mScale;
+    private Scalar mMean;
+    private boolean mSwapRB;
+
+    private List<Mat> mInputs;
+    private float[] mScores;
+    private int mClasses;
+    private MatOfDouble mLayerTimings;
+    private long mForwardNanos;
+
+    /**
+     * @param model - weights, in any format Dnn.readNet recognises by its extension
+     * @param config - network description, empty when the model file has it
+     * @param denominations - denomination of every output class
+     * @param inputSize - width and height of the network input
+     * @param scale - multiplier of the pixel values, after the mean is subtracted
+     * @param mean - subtracted from every pixel
+     * @param swapRB - true when the network was trained on BGR images
+     */
+    public DnnCoinClassifier(String model, String config, List<String> denominations,
+                             Size inputSize, double scale, Scalar mean, boolean swapRB) {
+        mNet = Dnn.readNet(model, config, "");
+        if (mNet.empty())
+            throw new IllegalArgumentException("Cannot read network " + model);
+        mNet.setPreferableBackend(Dnn.DNN_BACKEND_OPENCV);
+        mNet.setPreferableTarget(Dnn.DNN_TARGET_CPU);
+
+        for (String denomination : denominations) {
+            if (!CoinResult.isDenomination(denomination))
+                throw new IllegalArgumentException("Denomination " + denomination + " does not start with its value");
+        }
+        mDenominations = new ArrayList<>(denominations);
+        mInputSize = inputSize;
+        mScale = scale;
+        mMean = mean;
+        mSwapRB = swapRB;
+        mInputs = new ArrayList<>();
+        mScores = new float[0];
+        mLayerTimings = new MatOfDouble();
+
+        warmUp();
+    }
+
+    /* Reads the denominations of the output classes, one per line
+     */
+    public static List<String> readDenominations(File file) throws IOException {
+        List<String> denominations = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty())
+                    denominations.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return denominations;
+    }
+
+    private void warmUp() {
+        List<Mat> crops = new ArrayList<>();
+        Mat black = Mat.zeros(mInputSize, CvType.CV_8UC4);
+        for (int i = 0; i < WARM_UP_COINS; i++)
+            crops.add(black);
+        int classes = forward(crops);
+        black.release();
+        //every class the network can choose must have a denomination
+        if (classes != mDenominations.size())
+            throw new IllegalArgumentException("The network has " + classes + " classes but "
+                    + mDenominations.size() + " denominations are given");
+        mClasses = classes;
+    }
+
+    //the input buffers are shared, so frames are classified one at a time
+    @Override
+    public synchronized void classify(Mat features, List<Mat> crops, String[] denominations, float[] confidences) {
+        int count = crops.size();
+        if (count == 0)
+            return;
+
+        int classes = forward(crops);
+        if (classes != mClasses)
+            throw new IllegalStateException("The network returned " + classes + " classes, not " + mClasses);
+        for (int i = 0; i < count; i++) {
+            int best = 0;
+            for (int j = 1; j < classes; j++) {
+                if (mScores[i * classes + j] > mScores[i * classes + best])
+                    best = j;
+            }
+            denominations[i] = mDenominations.get(best);
+            confidences[i] = mScores[i * classes + best];
+        }
+    }
+
+    /* Runs the crops through the network, leaves their scores in mScores and returns
+     * the number of classes
+     */
+    private int forward(List<Mat> crops) {
+        int count = crops.size();
+
+        //the crops are RGBA, the network takes 3 channels
+        while (mInputs.size() < count)
+            mInputs.add(new Mat());
+        for (int i = 0; i < count; i++)
+            Imgproc.cvtColor(crops.get(i), mInputs.get(i), Imgproc.COLOR_RGBA2RGB);
+
+        long start = System.nanoTime();
+        Mat blob = Dnn.blobFromImages(mInputs.subList(0, count), mScale, mInputSize, mMean, mSwapRB, false);
+        mNet.setInput(blob);
+        Mat scores = mNet.forward();
+        mForwardNanos = System.nanoTime() - start;
+
+        //the scores may come as N x C or as N x C x 1 x 1
+        int classes = (int) (scores.total() / count);
+        if (mScores.length < count * classes)
+            mScores = new float[count * classes];
+        scores.reshape(1, count).get(0, 0, mScores);
+        blob.release();
+        scores.release();
+        return classes;
+    }
+
+    //duration of the last blob creation and forward pass
+    public long getForwardNanos() {
+        return mForwardNanos;
+    }
+
+    /* Time spent by every layer in the last forward pass, one line per layer,
+     * meant for logs and monitoring
+     */
+    public synchronized String getPerfProfile() {
+        double ticksPerMs = Core.getTickFrequency() / 1000;
+        long total = mNet.getPerfProfile(mLayerTimings);
+        double[] timings = mLayerTimings.toArray();
+        List<String> names = mNet.getLayerNames();
+
+        StringBuilder profile = new StringBuilder();
+        profile.append(String.format(Locale.US, "forward %.2f ms\n", total / ticksPerMs));
+        for (int i = 0; i < timings.length && i < names.size(); i++)
+            profile.append(String.format(Locale.US, "%-24s %.3f ms\n", names.get(i), timings[i] / ticksPerMs));
+        return profile.toString();
+    }
+
+    public List<String> getDenominations() {
+        return mDenominations;
+    }
+}
@@ -0,0 +1,65 @@
+package org.opencv.samples.colorblobdetect;
+
+import org.opencv.core.Mat;
+
+/**
+ * Colour statistics of one frame, shared by all of its coins.
+ * When the NV21 camera buffer of the frame is available the colour of a coin is
+ * sampled from its chroma; otherwise it is the mean of the coin inner square,
+ * read from the integral image of the RGBA frame.
+ * Nothing changes once it is built, so coins can be measured from several threads.
+ */
+public class FrameColorStats {
+
+    private RegionStats mRegionStats;
+    private byte[] mNv21;
+    private Nv21ChromaSampler mChromaSampler;
+
+    /**
+     * @param rgba - the frame, used when there is no NV21 buffer
+     * @param nv21 - camera buffer of the same frame, or null
+     * @param chromaSampler - sampler sized for the frame, or null
+     */
+    public FrameColorStats(Mat rgba, byte[] nv21, Nv21ChromaSampler chromaSampler) {
+        if (nv21 != null && chromaSampler != null) {
+            mNv21 = nv21;
+            mChromaSampler = chromaSampler;
+        } else {
+            mRegionStats = new RegionStats(rgba);
+        }
+    }
+
+    /* Mean red, green and blue of the coin, 0 when it is out of the frame
+     */
+    public void meanRgb(float x, float y, float radius, int[] rgb) {
+        rgb[0] = 0;
+        rgb[1] = 0;
+        rgb[2] = 0;
+        if (mRegionStats == null) {
+            int[] yuv = new int[3];
+            if (mChromaSampler.sample(mNv21, x, y, radius, yuv) > 0)
+                Nv21ChromaSampler.toRgb(yuv, rgb);
+            return;
+        }
+
+        //the inner square spans half the coin box, so it lies inside the disc
+        double[] mean = new double[mRegionStats.getChannels()];
+        int xCircle = Math.round(x);
+        int yCircle = Math.round(y);
+        int half = Math.max(1, Math.round(radius) / 2);
+        if (mRegionStats.mean(xCircle - half, yCircle - half, xCircle + half, yCircle + half, mean)) {
+            rgb[0] = (int) mean[0];
+            rgb[1] = (int) mean[1];
+            rgb[2] = (int) mean[2];
+        }
+    }
+
+    public boolean isFromNv21() {
+        return mRegionStats == null;
+    }
+
+    public void release() {
+        if (mRegionStats != null)
+            mRegionStats.release();
+    }
+}
@@ -0,0 +1,275 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.opencv.android.CameraOverlay;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Headless benchmark of the coin detection chain.
+ * It replays recorded frames through CoinFrameProcessor, the same code used by
+ * CoinDetectorActivity.onCameraFrame, and prints the throughput together with the
+ * p50/p95/p99 latency of every stage.
+ *
+ * It does not need a device, only the OpenCV desktop java bindings:
+ *   java -Djava.library.path=&lt;opencv libs&gt; -cp &lt;opencv jar&gt;:&lt;classes&gt; \
+ *       org.opencv.samples.colorblobdetect.FrameReplayBenchmark &lt;frames dir&gt; [width height [passes [detector [source]]]]
+ * The frames dir holds raw ".nv21" preview buffers of width x height or any image readable by Imgcodecs.
+ * The detector is one of "full" (default), "tracking", "pyramid", "tracking-pyramid", "tiled"
+ * or "adaptive" (full-frame under a HoughParamController with a 30 ms budget).
+ * The source is "rgba" (default) to detect on the converted frame as the app used to,
+ * or "gray" to detect on the Y plane as CoinDetectorActivity does now.
+ * Any detector other than "full" is also compared against a full-frame run.
+ * Finally the camera thread part of onCameraFrame is replayed to check that it does not allocate:
+ * the benchmark exits with status 2 when it does.
+ */
+public class FrameReplayBenchmark {
+
+    private static final int DEFAULT_WIDTH = 1280;
+    private static final int DEFAULT_HEIGHT = 720;
+    private static final int DEFAULT_PASSES = 10;
+    private static final long ADAPTIVE_BUDGET_MS = 30;
+    //exit status of a run whose camera frame path allocates
+    private static final int EXIT_ALLOCATES = 2;
+
+    private static final String[] STAGE_NAMES = {"acquire", "cvtColor", "medianBlur", "detect", "overlay", "total"};
+    private static final int STAGE_ACQUIRE = 0;
+    private static final int STAGE_DETECT = CoinFrameProcessor.STAGE_DETECT + 1;
+    private static final int STAGE_TOTAL = STAGE_NAMES.length - 1;
+
+    private static Object sThreadBean;
+    private static Method sAllocatedBytes;
+
+    private List<ReplayCameraFrame> mFrames;
+    private CoinFrameProcessor mProcessor;
+    private boolean mGraySource;
+    //the overlay of the camera view and the copy it draws from
+    private CameraOverlay mOverlay;
+    private CameraOverlay.Layer mOverlayLayer;
+
+    public FrameReplayBenchmark(List<ReplayCameraFrame> frames) {
+        mFrames = frames;
+        mProcessor = new CoinFrameProcessor();
+        mOverlay = new CameraOverlay();
+        mOverlayLayer = new CameraOverlay.Layer();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: FrameReplayBenchmark <frames dir> [width height [passes [detector [source]]]]");
+            System.exit(1);
+        }
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        int width = args.length > 2 ? Integer.parseInt(args[1]) : DEFAULT_WIDTH;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_HEIGHT;
+        int passes = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_PASSES;
+        String detector = args.length > 4 ? args[4] : "full";
+        boolean graySource = args.length > 5 && args[5].equals("gray");
+
+        List<ReplayCameraFrame> frames = loadFrames(new File(args[0]), width, height);
+        if (frames.isEmpty()) {
+            System.err.println("No frames found in " + args[0]);
+            System.exit(1);
+        }
+
+        FrameReplayBenchmark benchmark = new FrameReplayBenchmark(frames);
+        benchmark.mProcessor.setDetector(createDetector(detector));
+        benchmark.mGraySource = graySource;
+        System.out.println("detector: " + detector + ", source: " + (graySource ? "gray" : "rgba"));
+        //first pass warms up the JIT and the OpenCV buffers
+        benchmark.run(1);
+        long[][] samples = benchmark.run(passes);
+        benchmark.report(samples, System.out);
+        if (benchmark.mProcessor.getDetector() instanceof HoughParamController)
+            System.out.println(((HoughParamController) benchmark.mProcessor.getDetector()).getState());
+
+        if (!detector.equals("full")) {
+            FrameReplayBenchmark baseline = new FrameReplayBenchmark(frames);
+            baseline.mGraySource = graySource;
+            baseline.run(1);
+            long[][] baselineSamples = baseline.run(passes);
+            System.out.println(String.format(Locale.US, "detect speedup vs full: %.2fx",
+                    (double) sum(baselineSamples[STAGE_DETECT]) / Math.max(sum(samples[STAGE_DETECT]), 1)));
+        }
+
+        double allocated = benchmark.measureFramePathAllocations(passes);
+        for (ReplayCameraFrame frame : frames)
+            frame.release();
+
+        if (allocated < 0) {
+            System.out.println("frame path allocations: not supported by this JVM");
+        } else if (allocated > 0) {
+            System.err.println(String.format(Locale.US, "frame path allocations: %.1f bytes/frame, "
+                    + "the camera thread must not allocate", allocated));
+            System.exit(EXIT_ALLOCATES);
+        } else {
+            System.out.println("frame path allocations: none");
+        }
+    }
+
+    public static CircleDetector createDetector(String name) {
+        if (name.equals("full"))
+            return new HoughCircleDetector();
+        if (name.equals("tracking"))
+            return new TrackingCircleDetector(new HoughCircleDetector());
+        if (name.equals("pyramid"))
+            return new PyramidCircleDetector();
+        if (name.equals("adaptive")) {
+            HoughCircleDetector hough = new HoughCircleDetector();
+            return new HoughParamController(hough, hough, ADAPTIVE_BUDGET_MS);
+        }
+        if (name.equals("tiled"))
+            return new TiledCircleDetector(new HoughCircleDetector());
+        if (name.equals("tracking-pyramid")) {
+            HoughCircleDetector hough = new HoughCircleDetector();
+            return new TrackingCircleDetector(hough, new PyramidCircleDetector(hough),
+                    TrackingCircleDetector.DEFAULT_FULL_SWEEP_INTERVAL);
+        }
+        throw new IllegalArgumentException("Unknown detector " + name);
+    }
+
+    public static List<ReplayCameraFrame> loadFrames(File dir, int width, int height) throws IOException {
+        File[] files = dir.listFiles();
+        List<ReplayCameraFrame> frames = new ArrayList<>();
+        if (files == null)
+            return frames;
+
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isFile())
+                frames.add(ReplayCameraFrame.load(file, width, height));
+        }
+        return frames;
+    }
+
+    /* Replays every frame the given number of times.
+     * Returns the samples of every stage in nanoseconds, indexed as STAGE_NAMES.
+     */
+    public long[][] run(int passes) {
+        int count = passes * mFrames.size();
+        long[][] samples = new long[STAGE_NAMES.length][count];
+
+        int n = 0;
+        for (int pass = 0; pass < passes; pass++) {
+            for (ReplayCameraFrame frame : mFrames) {
+                long start = System.nanoTime();
+                Mat rgba = frame.rgba();
+                Mat source = mGraySource ? frame.gray() : rgba;
+                long acquired = System.nanoTime();
+                mProcessor.detectCoins(source);
+                mProcessor.publishOverlay(mOverlay, mProcessor.getCircles(), rgba.rows());
+                long end = System.nanoTime();
+
+                samples[STAGE_ACQUIRE][n] = acquired - start;
+                for (int stage = 0; stage < CoinFrameProcessor.STAGE_COUNT; stage++)
+                    samples[stage + 1][n] = mProcessor.getStageNanos(stage);
+                samples[STAGE_TOTAL][n] = end - start;
+                n++;
+            }
+        }
+        return samples;
+    }
+
+    /* Replays what CoinDetectorActivity.onCameraFrame does on the camera thread
+     * (motion gate, hand-off to the detection worker, latency metrics, overlay of the
+     * latest circles) and the copy of the overlay taken by the view to draw it.
+     * Returns the bytes allocated per frame once warmed up, or -1 when the JVM
+     * cannot count allocations.
+     */
+    public double measureFramePathAllocations(int passes) {
+        DetectionWorker worker = new DetectionWorker(new CoinFrameProcessor());
+        MotionGate gate = new MotionGate();
+        PipelineMetrics metrics = new PipelineMetrics();
+        Mat circles = new Mat();
+        mProcessor.setMetrics(metrics);
+        worker.start();
+
+        replayFramePath(worker, gate, metrics, circles, 1);
+        //what reading the counter allocates itself is not charged to the frames
+        long overhead = -allocatedBytes();
+        overhead += allocatedBytes();
+        long before = allocatedBytes();
+        replayFramePath(worker, gate, metrics, circles, passes);
+        long after = allocatedBytes();
+
+        worker.stop();
+        mProcessor.setMetrics(null);
+        circles.release();
+        if (before < 0 || after < 0)
+            return -1;
+        return (double) Math.max(after - before - overhead, 0) / (passes * mFrames.size());
+    }
+
+    private void replayFramePath(DetectionWorker worker, MotionGate gate, PipelineMetrics metrics,
+                                 Mat circles, int passes) {
+        for (int pass = 0; pass < passes; pass++) {
+            for (int i = 0; i < mFrames.size(); i++) {
+                ReplayCameraFrame frame = mFrames.get(i);
+                long acquireStart = System.nanoTime();
+                Mat gray = frame.gray();
+                long acquireNanos = System.nanoTime() - acquireStart;
+                if (gate.hasChanged(gray) && worker.submit(gray))
+                    gate.updateReference();
+
+                acquireStart = System.nanoTime();
+                Mat rgba = frame.rgba();
+                metrics.record(PipelineMetrics.STAGE_ACQUIRE, acquireNanos + System.nanoTime() - acquireStart);
+                worker.getLatestCircles(circles);
+                mProcessor.publishOverlay(mOverlay, circles, rgba.rows());
+                mOverlay.copyTo(mOverlayLayer);
+            }
+        }
+    }
+
+    //bytes allocated so far by the current thread, through the HotSpot management extension
+    private static long allocatedBytes() {
+        try {
+            if (sThreadBean == null) {
+                sThreadBean = Class.forName("java.lang.management.ManagementFactory")
+                        .getMethod("getThreadMXBean").invoke(null);
+                sAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                        .getMethod("getThreadAllocatedBytes", long.class);
+            }
+            return (Long) sAllocatedBytes.invoke(sThreadBean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    public void report(long[][] samples, PrintStream out) {
+        long[] total = samples[STAGE_TOTAL];
+        out.println(String.format(Locale.US, "%d frames, %.1f fps", total.length,
+                total.length * 1e9 / Math.max(sum(total), 1)));
+        out.println(String.format(Locale.US, "%-14s %9s %9s %9s", "stage (ms)", "p50", "p95", "p99"));
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            long[] sorted = samples[stage].clone();
+            Arrays.sort(sorted);
+            out.println(String.format(Locale.US, "%-14s %9.2f %9.2f %9.2f", STAGE_NAMES[stage],
+                    percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.95) / 1e6, percentile(sorted, 0.99) / 1e6));
+        }
+    }
+
+    static long sum(long[] samples) {
+        long sum = 0;
+        for (long sample : samples)
+            sum += sample;
+        return sum;
+    }
+
+    //nearest-rank percentile of an already sorted array
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+        int rank = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+    }
+}
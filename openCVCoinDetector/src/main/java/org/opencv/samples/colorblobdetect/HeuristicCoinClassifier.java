@@ -0,0 +1,43 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.List;
+
+import org.opencv.core.Mat;
+
+/**
+ * The original rule: the denomination only depends on the red - green contrast
+ * of the coin. Copper coins are over the high threshold, silver ones under the low one.
+ * The further the contrast is from the thresholds, the more confident the decision.
+ */
+public class HeuristicCoinClassifier implements CoinClassifier {
+
+    private static final int COPPER_CONTRAST = 30;
+    private static final int SILVER_CONTRAST = 4;
+    //contrast distance to a threshold that gives full confidence
+    private static final float CONFIDENCE_MARGIN = 10f;
+
+    @Override
+    public void classify(Mat features, List<Mat> crops, String[] denominations, float[] confidences) {
+        int count = features.rows();
+        if (count == 0)
+            return;
+
+        float[] data = new float[count * FEATURE_COUNT];
+        features.get(0, 0, data);
+        for (int i = 0; i < count; i++) {
+            int contrast = (int) data[i * FEATURE_COUNT + FEATURE_RED] - (int) data[i * FEATURE_COUNT + FEATURE_GREEN];
+            int margin;
+            if (contrast > COPPER_CONTRAST) {
+                denominations[i] = "1c";
+                margin = contrast - COPPER_CONTRAST;
+            } else if (contrast < SILVER_CONTRAST) {
+                denominations[i] = "2p";
+                margin = SILVER_CONTRAST - contrast;
+            } else {
+                denominations[i] = "1p";
+                margin = Math.min(contrast - SILVER_CONTRAST, COPPER_CONTRAST - contrast);
+            }
+            confidences[i] = 0.5f + 0.5f * Math.min(1f, margin / CONFIDENCE_MARGIN);
+        }
+    }
+}
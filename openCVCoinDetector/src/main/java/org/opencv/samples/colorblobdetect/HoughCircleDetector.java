@@ -0,0 +1,105 @@
+package org.opencv.samples.colorblobdetect;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Single full-frame HoughCircles call, the original detection of CoinDetectorActivity.
+ * It also keeps the Hough parameters shared by the other detectors.
+ */
+public class HoughCircleDetector implements CircleDetector {
+
+    public static final double DEFAULT_DP = 1;
+    public static final int DEFAULT_MIN_DIST_DIVIDER = 8;
+    public static final double DEFAULT_PARAM1 = 100;
+    public static final double DEFAULT_PARAM2 = 50;
+    public static final int DEFAULT_MIN_RADIUS = 10;
+    public static final int DEFAULT_MAX_RADIUS = 150;
+
+    private double mDp = DEFAULT_DP;
+    private int mMinDistDivider = DEFAULT_MIN_DIST_DIVIDER;
+    private double mParam1 = DEFAULT_PARAM1;
+    private double mParam2 = DEFAULT_PARAM2;
+    private int mMinRadius = DEFAULT_MIN_RADIUS;
+    private int mMaxRadius = DEFAULT_MAX_RADIUS;
+
+    @Override
+    public void detect(Mat gray, Mat circles) {
+        detect(gray, circles, gray.rows() / mMinDistDivider, mMinRadius, mMaxRadius);
+    }
+
+    /* HoughCircles with the current accumulator settings and a custom search range,
+     * used by the detectors that only look at part of the frame.
+     */
+    public void detect(Mat gray, Mat circles, double minDist, int minRadius, int maxRadius) {
+        detect(gray, circles, minDist, minRadius, maxRadius, mParam2);
+    }
+
+    public void detect(Mat gray, Mat circles, double minDist, int minRadius, int maxRadius, double param2) {
+        Imgproc.HoughCircles(gray, circles, Imgproc.HOUGH_GRADIENT, mDp, Math.max(minDist, 1),
+                mParam1, param2, minRadius, maxRadius);
+    }
+
+    //copy the first count circles of data (x, y, radius triplets) into circles
+    public static void writeCircles(float[] data, int count, Mat circles) {
+        circles.create(1, count, CvType.CV_32FC3);
+        if (count > 0)
+            circles.put(0, 0, data);
+    }
+
+    //read all the circles with a single transfer, growing buffer when needed
+    public static float[] readCircles(Mat circles, float[] buffer) {
+        int size = 3 * circles.cols();
+        if (buffer == null || buffer.length < size)
+            buffer = new float[size];
+        if (size > 0)
+            circles.get(0, 0, buffer);
+        return buffer;
+    }
+
+    public double getDp() {
+        return mDp;
+    }
+
+    public void setDp(double dp) {
+        mDp = dp;
+    }
+
+    public int getMinDistDivider() {
+        return mMinDistDivider;
+    }
+
+    public void setMinDistDivider(int minDistDivider) {
+        mMinDistDivider = minDistDivider;
+    }
+
+    public double getParam1() {
+        return mParam1;
+    }
+
+    public void setParam1(double param1) {
+        mParam1 = param1;
+    }
+
+    public double getParam2() {
+        return mParam2;
+    }
+
+    public void setParam2(double param2) {
+        mParam2 = param2;
+    }
+
+    public int getMinRadius() {
+        return mMinRadius;
+    }
+
+    public int getMaxRadius() {
+        return mMaxRadius;
+    }
+
+    public void setRadiusRange(int minRadius, int maxRadius) {
+        mMinRadius = minRadius;
+        mMaxRadius = maxRadius;
+    }
+}
@@ -0,0 +1,173 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.Locale;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Keeps the detection stage under a latency budget by tuning the Hough parameters
+ * between frames. It wraps the detector that does the work, measures how long it takes,
+ * and looks at the edge density of the frame and at the circles found.
+ * When the smoothed latency is over budget the controller raises its level, which
+ * raises param2 and dp and, from RADIUS_LEVEL on, narrows the radius range around
+ * the coins seen so far. It steps back down once the latency is well under budget.
+ */
+public class HoughParamController implements CircleDetector {
+
+    public static final int MAX_LEVEL = 4;
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+    //the level only goes down below this fraction of the budget
+    private static final double RELAX_RATIO = 0.6;
+    //frames to wait after a level change before the next one
+    private static final int COOLDOWN_FRAMES = 10;
+    private static final int EDGE_CHECK_INTERVAL = 10;
+    //fraction of edge pixels above which the scene is treated as cluttered
+    private static final double CLUTTER_DENSITY = 0.08;
+
+    private static final double PARAM2_STEP = 8;
+    private static final double DP_STEP = 0.25;
+    private static final double MAX_DP = 2;
+    private static final int RADIUS_LEVEL = 2;
+    private static final float RADIUS_MARGIN = 0.25f;
+
+    private CircleDetector mDetector;
+    private HoughCircleDetector mHough;
+    private long mBudgetNanos;
+
+    private double mBaseDp;
+    private double mBaseParam2;
+    private int mBaseMinRadius;
+    private int mBaseMaxRadius;
+
+    private int mLevel;
+    private int mCooldown;
+    private int mFrames;
+    private double mLatencyNanos;
+    private double mEdgeDensity;
+    private int mCircleCount;
+    private float mObservedMinRadius;
+    private float mObservedMaxRadius;
+
+    private Mat mSmall;
+    private Mat mEdges;
+    private float[] mCircleData;
+
+    public HoughParamController(CircleDetector detector, HoughCircleDetector hough, long budgetMillis) {
+        mDetector = detector;
+        mHough = hough;
+        mBudgetNanos = budgetMillis * 1000000L;
+
+        mBaseDp = hough.getDp();
+        mBaseParam2 = hough.getParam2();
+        mBaseMinRadius = hough.getMinRadius();
+        mBaseMaxRadius = hough.getMaxRadius();
+
+        mSmall = new Mat();
+        mEdges = new Mat();
+    }
+
+    @Override
+    public void detect(Mat gray, Mat circles) {
+        if (mFrames % EDGE_CHECK_INTERVAL == 0)
+            measureEdgeDensity(gray);
+        mFrames++;
+
+        long start = System.nanoTime();
+        mDetector.detect(gray, circles);
+        long elapsed = System.nanoTime() - start;
+
+        if (mLatencyNanos == 0)
+            mLatencyNanos = elapsed;
+        else
+            mLatencyNanos += LATENCY_SMOOTHING * (elapsed - mLatencyNanos);
+
+        observeCircles(circles);
+        adjust();
+    }
+
+    private void measureEdgeDensity(Mat gray) {
+        Imgproc.pyrDown(gray, mSmall);
+        Imgproc.Canny(mSmall, mEdges, mHough.getParam1() / 2, mHough.getParam1());
+        mEdgeDensity = (double) Core.countNonZero(mEdges) / Math.max(mEdges.total(), 1);
+    }
+
+    private void observeCircles(Mat circles) {
+        mCircleCount = circles.cols();
+        if (mCircleCount == 0) {
+            mObservedMinRadius = 0;
+            mObservedMaxRadius = 0;
+            return;
+        }
+
+        mCircleData = HoughCircleDetector.readCircles(circles, mCircleData);
+        mObservedMinRadius = Float.MAX_VALUE;
+        mObservedMaxRadius = 0;
+        for (int i = 0; i < mCircleCount; i++) {
+            float radius = mCircleData[3 * i + 2];
+            mObservedMinRadius = Math.min(mObservedMinRadius, radius);
+            mObservedMaxRadius = Math.max(mObservedMaxRadius, radius);
+        }
+    }
+
+    private void adjust() {
+        if (mCooldown > 0) {
+            mCooldown--;
+        } else if (mLatencyNanos > mBudgetNanos && mLevel < MAX_LEVEL) {
+            mLevel++;
+            mCooldown = COOLDOWN_FRAMES;
+        } else if (mLatencyNanos < mBudgetNanos * RELAX_RATIO && mLevel > 0) {
+            mLevel--;
+            mCooldown = COOLDOWN_FRAMES;
+        }
+
+        double param2 = mBaseParam2 + mLevel * PARAM2_STEP;
+        if (mEdgeDensity > CLUTTER_DENSITY && mLevel > 0)
+            param2 += PARAM2_STEP;
+        mHough.setParam2(param2);
+        mHough.setDp(Math.min(MAX_DP, mBaseDp + mLevel * DP_STEP));
+
+        //the range only stays narrow while there are coins to center it on
+        if (mLevel >= RADIUS_LEVEL && mCircleCount > 0) {
+            int minRadius = Math.max(mBaseMinRadius, Math.round(mObservedMinRadius * (1 - RADIUS_MARGIN)));
+            int maxRadius = Math.min(mBaseMaxRadius, Math.round(mObservedMaxRadius * (1 + RADIUS_MARGIN)) + 1);
+            mHough.setRadiusRange(minRadius, Math.max(minRadius + 1, maxRadius));
+        } else {
+            mHough.setRadiusRange(mBaseMinRadius, mBaseMaxRadius);
+        }
+    }
+
+    public void setBudgetMillis(long budgetMillis) {
+        mBudgetNanos = budgetMillis * 1000000L;
+    }
+
+    public long getBudgetMillis() {
+        return mBudgetNanos / 1000000L;
+    }
+
+    public int getLevel() {
+        return mLevel;
+    }
+
+    //smoothed duration of the detection stage
+    public double getLatencyMillis() {
+        return mLatencyNanos / 1e6;
+    }
+
+    public double getEdgeDensity() {
+        return mEdgeDensity;
+    }
+
+    public int getCircleCount() {
+        return mCircleCount;
+    }
+
+    //one line summary of the controller, meant for logs and monitoring
+    public String getState() {
+        return String.format(Locale.US, "level=%d dp=%.2f param2=%.0f radius=%d-%d latency=%.1f/%dms edges=%.3f circles=%d",
+                mLevel, mHough.getDp(), mHough.getParam2(), mHough.getMinRadius(), mHough.getMaxRadius(),
+                getLatencyMillis(), getBudgetMillis(), mEdgeDensity, mCircleCount);
+    }
+}
@@ -0,0 +1,156 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.ml.KNearest;
+import org.opencv.ml.Ml;
+
+/**
+ * Classifies the coins with a k-nearest neighbours model over the feature vectors
+ * of labelled coins. The model is trained once, when the classifier is created, and
+ * every frame is a single findNearest call over all of its coins.
+ * The confidence is the fraction of the k neighbours that agree with the decision.
+ *
+ * Samples files have one coin per line: its denomination followed by the
+ * FEATURE_COUNT feature values, separated by blanks, e.g. "1c 182 131 97 23".
+ * Empty lines and lines starting with '#' are skipped.
+ */
+public class KNearestCoinClassifier implements CoinClassifier {
+
+    public static final int DEFAULT_K = 5;
+
+    private KNearest mModel;
+    private List<String> mDenominations;
+    private int mK;
+
+    private Mat mResults;
+    private Mat mNeighbours;
+    private Mat mDistances;
+    private float[] mResultData;
+    private float[] mNeighbourData;
+
+    /**
+     * @param samples - N x FEATURE_COUNT, CV_32F
+     * @param sampleDenominations - denomination of every sample row
+     * @param k - neighbours taken into account
+     */
+    public KNearestCoinClassifier(Mat samples, List<String> sampleDenominations, int k) {
+        mDenominations = new ArrayList<>();
+        Mat responses = new Mat(samples.rows(), 1, CvType.CV_32F);
+        float[] responseData = new float[samples.rows()];
+        for (int i = 0; i < responseData.length; i++) {
+            String denomination = sampleDenominations.get(i);
+            if (!CoinResult.isDenomination(denomination))
+                throw new IllegalArgumentException("Denomination " + denomination + " does not start with its value");
+            if (!mDenominations.contains(denomination))
+                mDenominations.add(denomination);
+            responseData[i] = mDenominations.indexOf(denomination);
+        }
+        responses.put(0, 0, responseData);
+
+        mK = Math.min(k, samples.rows());
+        mModel = KNearest.create();
+        mModel.setDefaultK(mK);
+        mModel.setIsClassifier(true);
+        mModel.train(samples, Ml.ROW_SAMPLE, responses);
+        responses.release();
+
+        mResults = new Mat();
+        mNeighbours = new Mat();
+        mDistances = new Mat();
+        mResultData = new float[0];
+        mNeighbourData = new float[0];
+    }
+
+    public static KNearestCoinClassifier load(File file, int k) throws IOException {
+        List<String> denominations = new ArrayList<>();
+        List<float[]> rows = new ArrayList<>();
+        readSamples(file, denominations, rows);
+        if (rows.isEmpty())
+            throw new IOException("No coin samples in " + file);
+
+        Mat samples = new Mat(rows.size(), FEATURE_COUNT, CvType.CV_32F);
+        for (int i = 0; i < rows.size(); i++)
+            samples.put(i, 0, rows.get(i));
+        KNearestCoinClassifier classifier = new KNearestCoinClassifier(samples, denominations, k);
+        samples.release();
+        return classifier;
+    }
+
+    /* Reads a samples file, appending the denomination and the features of every coin
+     */
+    public static void readSamples(File file, List<String> denominations, List<float[]> features) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                String[] fields = line.split("\\s+");
+                if (fields.length != FEATURE_COUNT + 1)
+                    throw new IOException(file + ":" + lineNumber + ": expected a denomination and "
+                            + FEATURE_COUNT + " features");
+                float[] row = new float[FEATURE_COUNT];
+                try {
+                    for (int i = 0; i < FEATURE_COUNT; i++)
+                        row[i] = Float.parseFloat(fields[i + 1]);
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+                }
+                if (!CoinResult.isDenomination(fields[0]))
+                    throw new IOException(file + ":" + lineNumber + ": denomination " + fields[0]
+                            + " does not start with its value");
+                denominations.add(fields[0]);
+                features.add(row);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    //the result buffers are shared, so frames are classified one at a time
+    @Override
+    public synchronized void classify(Mat features, List<Mat> crops, String[] denominations, float[] confidences) {
+        int count = features.rows();
+        if (count == 0)
+            return;
+
+        mModel.findNearest(features, mK, mResults, mNeighbours, mDistances);
+        if (mResultData.length < count)
+            mResultData = new float[count];
+        if (mNeighbourData.length < count * mK)
+            mNeighbourData = new float[count * mK];
+        mResults.get(0, 0, mResultData);
+        mNeighbours.get(0, 0, mNeighbourData);
+
+        for (int i = 0; i < count; i++) {
+            float response = mResultData[i];
+            int agreeing = 0;
+            for (int j = 0; j < mK; j++) {
+                if (mNeighbourData[i * mK + j] == response)
+                    agreeing++;
+            }
+            denominations[i] = mDenominations.get(Math.round(response));
+            confidences[i] = (float) agreeing / mK;
+        }
+    }
+
+    public int getK() {
+        return mK;
+    }
+
+    public List<String> getDenominations() {
+        return mDenominations;
+    }
+}
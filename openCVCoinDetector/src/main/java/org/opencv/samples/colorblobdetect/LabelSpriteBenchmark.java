@@ -0,0 +1,77 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.Locale;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Headless comparison of LabelSpriteCache against direct Imgproc.putText, with the
+ * label styles of the app: the coin count banner of the preview and the coin and
+ * total labels of the results grid. For each style it checks that both draw the
+ * same pixels and prints the time per label.
+ *
+ *   java -Djava.library.path=&lt;opencv libs&gt; -cp &lt;opencv jar&gt;:&lt;classes&gt; \
+ *       org.opencv.samples.colorblobdetect.LabelSpriteBenchmark [iterations]
+ */
+public class LabelSpriteBenchmark {
+
+    private static final int DEFAULT_ITERATIONS = 2000;
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    private static final String[] COIN_LABELS = {"1c", "1p", "2p", "$3", "$12", "$27"};
+    private static final String[] BANNER_LABELS = {
+            "La cantidad de monedas presentes es:0", "La cantidad de monedas presentes es:5",
+            "La cantidad de monedas presentes es:12"};
+
+    public static void main(String[] args) {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+        run("banner", BANNER_LABELS, new Point(10, HEIGHT - 30), Core.FONT_HERSHEY_SIMPLEX, 1,
+                new Scalar(200, 200, 200), 4, iterations);
+        run("coin", COIN_LABELS, new Point(85, 140), Core.FONT_HERSHEY_COMPLEX, 2,
+                new Scalar(0xFF, 0x00, 0x00, 0xFF), 3, iterations);
+    }
+
+    private static void run(String name, String[] labels, Point origin, int font, double scale,
+                            Scalar color, int thickness, int iterations) {
+        Mat putTextFrame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4, new Scalar(0, 0, 0, 255));
+        Mat spriteFrame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4, new Scalar(0, 0, 0, 255));
+        LabelSpriteCache sprites = new LabelSpriteCache(font, scale, color, thickness);
+
+        boolean identical = true;
+        for (String label : labels) {
+            putTextFrame.setTo(new Scalar(0, 0, 0, 255));
+            spriteFrame.setTo(new Scalar(0, 0, 0, 255));
+            Imgproc.putText(putTextFrame, label, origin, font, scale, color, thickness);
+            sprites.draw(spriteFrame, label, origin);
+            identical &= Core.norm(putTextFrame, spriteFrame, Core.NORM_INF) == 0;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            Imgproc.putText(putTextFrame, labels[i % labels.length], origin, font, scale, color, thickness);
+        long putTextNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            sprites.draw(spriteFrame, labels[i % labels.length], origin);
+        long spriteNanos = System.nanoTime() - start;
+
+        System.out.println(String.format(Locale.US,
+                "%-7s putText %.1f us/label  sprite %.1f us/label  speedup %.2fx  %d sprites, %d bytes, %s",
+                name, putTextNanos / 1e3 / iterations, spriteNanos / 1e3 / iterations,
+                (double) putTextNanos / Math.max(spriteNanos, 1), sprites.size(), sprites.getBytes(),
+                identical ? "identical output" : "OUTPUT DIFFERS"));
+
+        sprites.clear();
+        putTextFrame.release();
+        spriteFrame.release();
+    }
+}
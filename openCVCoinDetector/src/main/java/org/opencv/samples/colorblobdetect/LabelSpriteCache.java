@@ -0,0 +1,224 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import static org.opencv.core.CvType.CV_8UC1;
+
+/**
+ * Draws text labels of one style (font, scale, color and thickness) without running
+ * putText every time. Every distinct label is rasterized once, as putText would draw it,
+ * into a small coverage mask; drawing it is then a masked setTo of the color over the
+ * label rectangle. putText does not antialias by default, so the result is the same
+ * pixel for pixel.
+ * The sprites are kept in LRU order and the least recently drawn ones are dropped
+ * once their masks take more than maxBytes.
+ * Drawing the same label at the same place of one of the last few Mats again does not allocate.
+ * It is not thread safe: each drawing thread needs its own cache.
+ */
+public class LabelSpriteCache {
+
+    public static final int DEFAULT_MAX_BYTES = 256 * 1024;
+    //target rectangles kept by every sprite: the camera buffers and a spare
+    private static final int TARGET_SLOTS = 3;
+
+    private int mFont;
+    private double mScale;
+    private Scalar mColor;
+    private int mThickness;
+    private int mPadding;
+    private int mMaxBytes;
+    private int mBytes;
+
+    private LinkedHashMap<String, Sprite> mSprites;
+    private int[] mBaseline;
+    private long mRasterized;
+    private long mDrawn;
+
+    public LabelSpriteCache(int font, double scale, Scalar color, int thickness, int maxBytes) {
+        mFont = font;
+        mScale = scale;
+        mColor = color;
+        mThickness = thickness;
+        //thick strokes reach beyond the box of getTextSize
+        mPadding = thickness + 2;
+        mMaxBytes = maxBytes;
+        mSprites = new LinkedHashMap<>(16, 0.75f, true);
+        mBaseline = new int[1];
+    }
+
+    public LabelSpriteCache(int font, double scale, Scalar color, int thickness) {
+        this(font, scale, color, thickness, DEFAULT_MAX_BYTES);
+    }
+
+    /* Draws text with its baseline starting at origin, like Imgproc.putText
+     */
+    public void draw(Mat dst, String text, Point origin) {
+        Sprite sprite = mSprites.get(text);
+        if (sprite == null) {
+            sprite = rasterize(text);
+            mSprites.put(text, sprite);
+            mBytes += sprite.mMaskBytes;
+            evict(sprite);
+        }
+        sprite.draw(dst, (int) Math.round(origin.x), (int) Math.round(origin.y));
+        mDrawn++;
+    }
+
+    private Sprite rasterize(String text) {
+        Size size = Imgproc.getTextSize(text, mFont, mScale, mThickness, mBaseline);
+        int width = (int) size.width + 2 * mPadding;
+        int height = (int) size.height + mBaseline[0] + 2 * mPadding;
+        int ascent = (int) size.height + mPadding;
+
+        Mat mask = new Mat(height, width, CV_8UC1, new Scalar(0));
+        Imgproc.putText(mask, text, new Point(mPadding, ascent), mFont, mScale, new Scalar(255), mThickness);
+        mRasterized++;
+        return new Sprite(mask, mPadding, ascent);
+    }
+
+    private void evict(Sprite keep) {
+        Iterator<Map.Entry<String, Sprite>> entries = mSprites.entrySet().iterator();
+        while (mBytes > mMaxBytes && entries.hasNext()) {
+            Sprite sprite = entries.next().getValue();
+            if (sprite == keep)
+                continue;
+            mBytes -= sprite.mMaskBytes;
+            sprite.release();
+            entries.remove();
+        }
+    }
+
+    public void clear() {
+        for (Sprite sprite : mSprites.values())
+            sprite.release();
+        mSprites.clear();
+        mBytes = 0;
+    }
+
+    public int size() {
+        return mSprites.size();
+    }
+
+    public int getBytes() {
+        return mBytes;
+    }
+
+    //labels drawn with putText, the others were copies of a sprite
+    public long getRasterized() {
+        return mRasterized;
+    }
+
+    public long getDrawn() {
+        return mDrawn;
+    }
+
+    /**
+     * A rasterized label: its coverage mask and where the text origin lies in it.
+     * The target rectangles of the last TARGET_SLOTS places drawn at are kept, one per
+     * Mat and position, so drawing into frames that alternate between a few buffers (as
+     * the two of JavaCameraView) reuses them instead of taking new submats every frame.
+     */
+    private class Sprite {
+        private Mat mMask;
+        private int mOriginX;
+        private int mOriginY;
+        private int mMaskBytes;
+
+        private Target[] mTargets;
+        private long mUses;
+
+        Sprite(Mat mask, int originX, int originY) {
+            mMask = mask;
+            mOriginX = originX;
+            mOriginY = originY;
+            mMaskBytes = mask.rows() * mask.cols();
+            mTargets = new Target[TARGET_SLOTS];
+            for (int i = 0; i < TARGET_SLOTS; i++)
+                mTargets[i] = new Target();
+        }
+
+        void draw(Mat dst, int x, int y) {
+            Target target = null;
+            Target oldest = mTargets[0];
+            for (Target slot : mTargets) {
+                if (slot.matches(dst, x, y)) {
+                    target = slot;
+                    break;
+                }
+                if (slot.mLastUse < oldest.mLastUse)
+                    oldest = slot;
+            }
+            if (target == null) {
+                target = oldest;
+                target.locate(dst, x, y);
+            }
+            target.mLastUse = ++mUses;
+            if (target.mRoi != null)
+                target.mRoi.setTo(mColor, target.mMaskRoi);
+        }
+
+        void release() {
+            for (Target target : mTargets)
+                target.release();
+            mMask.release();
+        }
+
+        /**
+         * The part of one Mat covered by the sprite drawn at one place, and the matching
+         * part of the mask. The ROIs are null when the sprite lies outside the Mat.
+         */
+        private class Target {
+            private long mObj;
+            private long mData;
+            private int mX;
+            private int mY;
+            private Mat mRoi;
+            private Mat mMaskRoi;
+            private boolean mLocated;
+            private long mLastUse;
+
+            boolean matches(Mat dst, int x, int y) {
+                return mLocated && dst.nativeObj == mObj && dst.dataAddr() == mData && x == mX && y == mY;
+            }
+
+            //clips the sprite rectangle to dst
+            void locate(Mat dst, int x, int y) {
+                release();
+                mObj = dst.nativeObj;
+                mData = dst.dataAddr();
+                mX = x;
+                mY = y;
+                mLocated = true;
+
+                int left = x - mOriginX;
+                int top = y - mOriginY;
+                int x0 = Math.max(0, left);
+                int y0 = Math.max(0, top);
+                int x1 = Math.min(dst.cols(), left + mMask.cols());
+                int y1 = Math.min(dst.rows(), top + mMask.rows());
+                if (x1 <= x0 || y1 <= y0)
+                    return;
+                mRoi = dst.submat(y0, y1, x0, x1);
+                mMaskRoi = mMask.submat(y0 - top, y1 - top, x0 - left, x1 - left);
+            }
+
+            void release() {
+                if (mRoi != null) {
+                    mRoi.release();
+                    mMaskRoi.release();
+                    mRoi = null;
+                    mMaskRoi = null;
+                }
+                mLocated = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.opencv.samples.colorblobdetect;
+
+/**
+ * Fixed-size latency histogram with microsecond resolution up to 16 us and
+ * 8 buckets per power of two above it (at most 12.5% error), up to 2^25 us (about 33 s).
+ * Recording never allocates, so it can be called for every frame.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int FIRST_EXPONENT = 4;
+    private static final int LAST_EXPONENT = 24;
+    private static final int BUCKETS = LINEAR_BUCKETS + (LAST_EXPONENT - FIRST_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    public synchronized void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        mCounts[bucketOf(nanos / 1000)]++;
+        mCount++;
+        mTotalNanos += nanos;
+        if (nanos > mMaxNanos)
+            mMaxNanos = nanos;
+    }
+
+    /* Value below which the fraction p of the samples fall, in nanoseconds.
+     * It is the upper bound of the bucket holding that sample.
+     */
+    public synchronized long percentile(double p) {
+        if (mCount == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(p * mCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= rank)
+                return Math.min(upperBoundMicros(i) * 1000, mMaxNanos);
+        }
+        return mMaxNanos;
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    public synchronized long getMeanNanos() {
+        return mCount == 0 ? 0 : mTotalNanos / mCount;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            mCounts[i] = 0;
+        mCount = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS)
+            return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > LAST_EXPONENT)
+            return BUCKETS - 1;
+        int sub = (int) (micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundMicros(int bucket) {
+        if (bucket < LINEAR_BUCKETS)
+            return bucket + 1;
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + FIRST_EXPONENT;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,198 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Keeps the raw resources used as models in app storage, where the OpenCV readers
+ * can open them. Unlike Utils.exportResource a resource is not written again on every
+ * start: a stamp next to the exported file records the install time of the APK, the
+ * length and the CRC32 of the resource. While the APK is the same and the exported file
+ * has the stamped length nothing is read at all; after an update the resource is read
+ * once for its CRC32 and only copied when it changed. A copy computes the CRC32 as it
+ * goes, so a resource is never read twice.
+ * Encoded images are memory mapped and decoded straight from the mapping, without
+ * copying them to the Java heap first as Utils.loadResource does. The Dnn readers of
+ * this OpenCV version only take file paths, so networks are read from the exported file.
+ */
+public class ModelStore {
+
+    private static final String STAMP_SUFFIX = ".stamp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Context mContext;
+    private File mDir;
+    private byte[] mBuffer;
+
+    public ModelStore(Context context, String dirname) {
+        mContext = context;
+        mDir = context.getDir(dirname, Context.MODE_PRIVATE);
+        mBuffer = new byte[BUFFER_SIZE];
+    }
+
+    /* Returns the exported file of a raw resource, writing it only when it is
+     * missing or its content changed
+     */
+    public synchronized File export(int resourceId) throws IOException {
+        String fullname = mContext.getResources().getString(resourceId);
+        String resName = fullname.substring(fullname.lastIndexOf("/") + 1);
+        File resFile = new File(mDir, resName);
+        File stampFile = new File(mDir, resName + STAMP_SUFFIX);
+
+        long installed = packageUpdateTime();
+        long length = resourceLength(resourceId);
+        long[] stamp = readStamp(stampFile);
+        boolean exported = resFile.exists() && stamp != null && stamp[1] == resFile.length()
+                && (length < 0 || length == resFile.length());
+        if (exported && installed >= 0 && stamp[0] == installed)
+            return resFile;
+
+        //the APK changed, the copy is only needed when the resource did
+        if (exported) {
+            long checksum = checksum(resourceId);
+            if (stamp[2] == checksum) {
+                writeStamp(stampFile, installed, resFile.length(), checksum);
+                return resFile;
+            }
+        }
+
+        //written aside and renamed, so a crash never leaves a truncated model behind
+        File tmpFile = new File(mDir, resName + ".tmp");
+        CRC32 crc = new CRC32();
+        InputStream is = mContext.getResources().openRawResource(resourceId);
+        OutputStream os = new FileOutputStream(tmpFile);
+        try {
+            int bytesRead;
+            while ((bytesRead = is.read(mBuffer)) != -1) {
+                crc.update(mBuffer, 0, bytesRead);
+                os.write(mBuffer, 0, bytesRead);
+            }
+        } finally {
+            is.close();
+            os.close();
+        }
+        if (!tmpFile.renameTo(resFile))
+            throw new IOException("Cannot replace " + resFile);
+        writeStamp(stampFile, installed, resFile.length(), crc.getValue());
+        return resFile;
+    }
+
+    /* Maps a file read-only. The mapping lives until the buffer is garbage collected.
+     */
+    public static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            //the mapping stays valid once the file is closed
+            raf.close();
+        }
+    }
+
+    /* Decodes an encoded image resource with Imgcodecs.imdecode, reading it through
+     * a memory mapping of the exported file. Returns an empty Mat when it cannot be decoded.
+     */
+    public Mat loadImage(int resourceId, int flags) throws IOException {
+        MappedByteBuffer data = map(export(resourceId));
+        if (data.capacity() == 0)
+            return new Mat();
+        //the Mat wraps the mapping, imdecode reads the file pages directly
+        Mat encoded = new Mat(1, data.capacity(), CvType.CV_8U, data);
+        Mat decoded = Imgcodecs.imdecode(encoded, flags);
+        encoded.release();
+        return decoded;
+    }
+
+    //last install or update of the APK, -1 if unknown
+    private long packageUpdateTime() {
+        try {
+            return mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return -1;
+        }
+    }
+
+    //length of a raw resource stored uncompressed in the APK, -1 if it is compressed
+    private long resourceLength(int resourceId) throws IOException {
+        AssetFileDescriptor fd;
+        try {
+            fd = mContext.getResources().openRawResourceFd(resourceId);
+        } catch (Resources.NotFoundException e) {
+            return -1;
+        }
+        if (fd == null)
+            return -1;
+        long length = fd.getLength();
+        fd.close();
+        return length;
+    }
+
+    private long checksum(int resourceId) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream is = mContext.getResources().openRawResource(resourceId);
+        try {
+            int bytesRead;
+            while ((bytesRead = is.read(mBuffer)) != -1)
+                crc.update(mBuffer, 0, bytesRead);
+        } finally {
+            is.close();
+        }
+        return crc.getValue();
+    }
+
+    //install time, length and CRC32 of an exported resource, null if there is no valid stamp
+    private static long[] readStamp(File file) {
+        if (!file.exists())
+            return null;
+        try {
+            byte[] data = new byte[(int) file.length()];
+            InputStream is = new FileInputStream(file);
+            try {
+                int read = 0;
+                while (read < data.length) {
+                    int n = is.read(data, read, data.length - read);
+                    if (n < 0)
+                        break;
+                    read += n;
+                }
+            } finally {
+                is.close();
+            }
+            String[] fields = new String(data, "US-ASCII").trim().split(" ");
+            if (fields.length != 3)
+                return null;
+            return new long[]{Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2])};
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void writeStamp(File file, long installed, long length, long checksum) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write((installed + " " + length + " " + checksum).getBytes("US-ASCII"));
+        } finally {
+            os.close();
+        }
+    }
+}
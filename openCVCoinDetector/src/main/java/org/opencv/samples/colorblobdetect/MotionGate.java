@@ -0,0 +1,79 @@
+package org.opencv.samples.colorblobdetect;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cheap change detector on the camera Y plane, used to skip the detection of
+ * static scenes. The frame is shrunk by SCALE and compared with the frame of the
+ * last detection: when fewer than CHANGED_FRACTION of the pixels moved by more than
+ * PIXEL_THRESHOLD the previous circles are still valid.
+ * A detection is forced every MAX_SKIPPED_FRAMES frames to follow slow changes.
+ */
+public class MotionGate {
+
+    private static final int SCALE = 8;
+    private static final double PIXEL_THRESHOLD = 12;
+    private static final double CHANGED_FRACTION = 0.005;
+    private static final int MAX_SKIPPED_FRAMES = 30;
+
+    private Mat mSmall;
+    private Mat mReference;
+    private Mat mDiff;
+    private Size mSmallSize;
+    private int mSkippedInRow;
+
+    private long mFrames;
+    private long mSkippedFrames;
+
+    public MotionGate() {
+        mSmall = new Mat();
+        mReference = new Mat();
+        mDiff = new Mat();
+        mSmallSize = new Size();
+    }
+
+    /* Returns true when the frame needs a new detection.
+     * Call updateReference() once the frame was actually handed to the detector.
+     */
+    public boolean hasChanged(Mat gray) {
+        mFrames++;
+        mSmallSize.width = gray.cols() / SCALE;
+        mSmallSize.height = gray.rows() / SCALE;
+        Imgproc.resize(gray, mSmall, mSmallSize, 0, 0, Imgproc.INTER_AREA);
+
+        if (mReference.empty() || mReference.cols() != mSmall.cols() || mReference.rows() != mSmall.rows()
+                || mSkippedInRow >= MAX_SKIPPED_FRAMES)
+            return true;
+
+        Core.absdiff(mSmall, mReference, mDiff);
+        Imgproc.threshold(mDiff, mDiff, PIXEL_THRESHOLD, 255, Imgproc.THRESH_BINARY);
+        if (Core.countNonZero(mDiff) > CHANGED_FRACTION * mDiff.total())
+            return true;
+
+        mSkippedInRow++;
+        mSkippedFrames++;
+        return false;
+    }
+
+    //the last frame given to hasChanged becomes the reference of the static scene
+    public void updateReference() {
+        mSmall.copyTo(mReference);
+        mSkippedInRow = 0;
+    }
+
+    public long getFrames() {
+        return mFrames;
+    }
+
+    public long getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    //fraction of the frames whose detection was skipped
+    public double getSkipRatio() {
+        return mFrames == 0 ? 0 : (double) mSkippedFrames / mFrames;
+    }
+}
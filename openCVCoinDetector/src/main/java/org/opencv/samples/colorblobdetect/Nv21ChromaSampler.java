@@ -0,0 +1,139 @@
+package org.opencv.samples.colorblobdetect;
+
+/**
+ * Measures the colour of a coin straight from the NV21 camera buffer, without an
+ * RGBA conversion of the frame. The coin is sampled on the chroma grid (one sample
+ * per 2x2 pixels): for every sample the luma of its top left pixel and the V and U
+ * bytes of the interleaved chroma plane are added up with integer math.
+ * The byte offsets of the samples relative to the coin center are precomputed once
+ * per coin size and reused by every coin and frame of that size; only coins that
+ * cross the border of the frame need bounds checks.
+ * The sampled region is the inner square of the coin, half its box wide, the same region
+ * as the RGBA path, so both feed the classifiers the same statistic and the colour
+ * thresholds apply to either. The tables are shared, so it is safe to use from several threads.
+ */
+public class Nv21ChromaSampler {
+
+    public static final int Y = 0;
+    public static final int U = 1;
+    public static final int V = 2;
+
+    private final int mWidth;
+    private final int mHeight;
+    //indexed by the half side of the square, in chroma samples
+    private OffsetTable[] mTables;
+
+    public Nv21ChromaSampler(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mTables = new OffsetTable[0];
+    }
+
+    /* Mean Y, U and V of the coin inner square. Returns the number of samples, 0 when the
+     * disc is out of the frame and yuv is left untouched.
+     */
+    public int sample(byte[] nv21, float x, float y, float radius, int[] yuv) {
+        int cx = Math.round(x) / 2;
+        int cy = Math.round(y) / 2;
+        //the inner square spans half the coin box: round(radius) / 2 pixels each side
+        OffsetTable table = getTable(Math.round(radius) / 2 / 2);
+
+        int chromaCols = mWidth / 2;
+        int chromaRows = mHeight / 2;
+        int lumaCenter = 2 * cy * mWidth + 2 * cx;
+        int chromaCenter = mWidth * mHeight + cy * mWidth + 2 * cx;
+        int r = table.mRadius;
+        boolean inside = cx - r >= 0 && cy - r >= 0 && cx + r < chromaCols && cy + r < chromaRows;
+
+        int sumY = 0;
+        int sumU = 0;
+        int sumV = 0;
+        int count = 0;
+        for (int i = 0; i < table.mCount; i++) {
+            if (!inside) {
+                int sx = cx + table.mDx[i];
+                int sy = cy + table.mDy[i];
+                if (sx < 0 || sy < 0 || sx >= chromaCols || sy >= chromaRows)
+                    continue;
+            }
+            int chroma = chromaCenter + table.mChromaOffsets[i];
+            sumY += nv21[lumaCenter + table.mLumaOffsets[i]] & 0xFF;
+            sumV += nv21[chroma] & 0xFF;
+            sumU += nv21[chroma + 1] & 0xFF;
+            count++;
+        }
+
+        if (count > 0) {
+            yuv[Y] = sumY / count;
+            yuv[U] = sumU / count;
+            yuv[V] = sumV / count;
+        }
+        return count;
+    }
+
+    /* BT.601 conversion of a YUV colour, the same as the camera frame conversion
+     * to RGBA, in 10 bit fixed point
+     */
+    public static void toRgb(int[] yuv, int[] rgb) {
+        int luma = 1192 * Math.max(0, yuv[Y] - 16);
+        int u = yuv[U] - 128;
+        int v = yuv[V] - 128;
+        rgb[0] = clamp((luma + 1634 * v) >> 10);
+        rgb[1] = clamp((luma - 833 * v - 400 * u) >> 10);
+        rgb[2] = clamp((luma + 2066 * u) >> 10);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(value, 255));
+    }
+
+    private synchronized OffsetTable getTable(int chromaHalf) {
+        chromaHalf = Math.max(1, chromaHalf);
+        if (chromaHalf >= mTables.length) {
+            OffsetTable[] tables = new OffsetTable[chromaHalf + 1];
+            System.arraycopy(mTables, 0, tables, 0, mTables.length);
+            mTables = tables;
+        }
+        if (mTables[chromaHalf] == null)
+            mTables[chromaHalf] = new OffsetTable(chromaHalf, mWidth);
+        return mTables[chromaHalf];
+    }
+
+    /**
+     * Chroma samples of a square of the given half side, as offsets from its center
+     */
+    private static class OffsetTable {
+        private final int mRadius;
+        private final int mCount;
+        private final int[] mDx;
+        private final int[] mDy;
+        private final int[] mLumaOffsets;
+        private final int[] mChromaOffsets;
+
+        OffsetTable(int radius, int width) {
+            int side = 2 * radius + 1;
+            int[] dx = new int[side * side];
+            int[] dy = new int[side * side];
+            int count = 0;
+            for (int j = -radius; j <= radius; j++) {
+                for (int i = -radius; i <= radius; i++) {
+                    dx[count] = i;
+                    dy[count] = j;
+                    count++;
+                }
+            }
+
+            mRadius = radius;
+            mCount = count;
+            mDx = dx;
+            mDy = dy;
+            mLumaOffsets = new int[count];
+            mChromaOffsets = new int[count];
+            for (int k = 0; k < count; k++) {
+                mLumaOffsets[k] = 2 * dy[k] * width + 2 * dx[k];
+                //a chroma row holds width bytes: V and U of width / 2 samples
+                mChromaOffsets[k] = dy[k] * width + 2 * dx[k];
+            }
+        }
+    }
+}
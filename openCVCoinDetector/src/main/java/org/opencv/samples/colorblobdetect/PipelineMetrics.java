@@ -0,0 +1,58 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.Locale;
+
+/**
+ * Per-stage latency histograms of the detection pipeline.
+ * Stages are recorded from the camera thread, the detection worker and the
+ * camera view drawing code; dumps format the percentiles of every stage.
+ */
+public class PipelineMetrics {
+
+    public static final int STAGE_ACQUIRE = 0;
+    public static final int STAGE_CONVERT = 1;
+    public static final int STAGE_BLUR = 2;
+    public static final int STAGE_DETECT = 3;
+    public static final int STAGE_OVERLAY = 4;
+    public static final int STAGE_MAT_TO_BITMAP = 5;
+    public static final int STAGE_BLIT = 6;
+    public static final int STAGE_COUNT = 7;
+
+    private static final String[] STAGE_NAMES = {"acquire", "cvtColor", "medianBlur", "detect",
+            "overlay", "matToBitmap", "canvas blit"};
+
+    private final LatencyHistogram[] mHistograms;
+
+    public PipelineMetrics() {
+        mHistograms = new LatencyHistogram[STAGE_COUNT];
+        for (int i = 0; i < STAGE_COUNT; i++)
+            mHistograms[i] = new LatencyHistogram();
+    }
+
+    public void record(int stage, long nanos) {
+        mHistograms[stage].record(nanos);
+    }
+
+    public LatencyHistogram getHistogram(int stage) {
+        return mHistograms[stage];
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : mHistograms)
+            histogram.reset();
+    }
+
+    //one line per stage with count, mean, p50/p95/p99 and max in milliseconds
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "%-13s %7s %8s %8s %8s %8s %8s%n",
+                "stage (ms)", "count", "mean", "p50", "p95", "p99", "max"));
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            LatencyHistogram h = mHistograms[i];
+            builder.append(String.format(Locale.US, "%-13s %7d %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                    STAGE_NAMES[i], h.getCount(), h.getMeanNanos() / 1e6, h.percentile(0.50) / 1e6,
+                    h.percentile(0.95) / 1e6, h.percentile(0.99) / 1e6, h.getMaxNanos() / 1e6));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package org.opencv.samples.colorblobdetect;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Coarse-to-fine detection: HoughCircles runs on a pyrDown'd copy of the frame
+ * (a quarter of the pixels) to get the candidates, then every candidate is refined
+ * with a narrow radius search in a small full resolution window.
+ * Candidates that cannot be refined are kept with their scaled coarse values.
+ */
+public class PyramidCircleDetector implements CircleDetector {
+
+    //refine window half size is radius * WINDOW_SCALE + WINDOW_MARGIN
+    private static final float WINDOW_SCALE = 1.3f;
+    private static final int WINDOW_MARGIN = 6;
+    //radius error of the coarse level, in full resolution pixels
+    private static final int RADIUS_SLACK = 4;
+
+    private HoughCircleDetector mHough;
+    private Mat mSmall;
+    private Mat mCandidates;
+    private Mat mRefined;
+    private float[] mCandidateData;
+    private float[] mRefinedData;
+    private float[] mOutput;
+
+    public PyramidCircleDetector(HoughCircleDetector hough) {
+        mHough = hough;
+        mSmall = new Mat();
+        mCandidates = new Mat();
+        mRefined = new Mat();
+        mOutput = new float[0];
+    }
+
+    public PyramidCircleDetector() {
+        this(new HoughCircleDetector());
+    }
+
+    @Override
+    public void detect(Mat gray, Mat circles) {
+        Imgproc.pyrDown(gray, mSmall);
+
+        //radii and votes are halved on the coarse level
+        int minRadius = Math.max(1, mHough.getMinRadius() / 2);
+        int maxRadius = (mHough.getMaxRadius() + 1) / 2;
+        mHough.detect(mSmall, mCandidates, mSmall.rows() / mHough.getMinDistDivider(),
+                minRadius, maxRadius, mHough.getParam2() / 2);
+
+        int count = mCandidates.cols();
+        mCandidateData = HoughCircleDetector.readCircles(mCandidates, mCandidateData);
+        if (mOutput.length < 3 * count)
+            mOutput = new float[3 * count];
+
+        for (int i = 0; i < count; i++) {
+            float x = 2 * mCandidateData[3 * i];
+            float y = 2 * mCandidateData[3 * i + 1];
+            float radius = 2 * mCandidateData[3 * i + 2];
+            refine(gray, x, y, radius, i);
+        }
+        HoughCircleDetector.writeCircles(mOutput, count, circles);
+    }
+
+    //look for the candidate at full resolution and store it at position index of the output
+    private void refine(Mat gray, float x, float y, float radius, int index) {
+        mOutput[3 * index] = x;
+        mOutput[3 * index + 1] = y;
+        mOutput[3 * index + 2] = radius;
+
+        int half = Math.round(radius * WINDOW_SCALE) + WINDOW_MARGIN;
+        int x0 = Math.max(0, Math.round(x) - half);
+        int y0 = Math.max(0, Math.round(y) - half);
+        int x1 = Math.min(gray.cols(), Math.round(x) + half);
+        int y1 = Math.min(gray.rows(), Math.round(y) + half);
+        if (x1 - x0 < 2 * WINDOW_MARGIN || y1 - y0 < 2 * WINDOW_MARGIN)
+            return;
+
+        int minRadius = Math.max(mHough.getMinRadius(), Math.round(radius) - RADIUS_SLACK);
+        int maxRadius = Math.min(mHough.getMaxRadius(), Math.round(radius) + RADIUS_SLACK);
+        if (maxRadius <= minRadius)
+            return;
+
+        Mat window = gray.submat(y0, y1, x0, x1);
+        mHough.detect(window, mRefined, Math.max(window.rows(), window.cols()), minRadius, maxRadius);
+        window.release();
+
+        if (mRefined.cols() > 0) {
+            mRefinedData = HoughCircleDetector.readCircles(mRefined, mRefinedData);
+            mOutput[3 * index] = mRefinedData[0] + x0;
+            mOutput[3 * index + 1] = mRefinedData[1] + y0;
+            mOutput[3 * index + 2] = mRefinedData[2];
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.opencv.samples.colorblobdetect;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Integral image of a frame, to get the mean colour of any rectangle in constant time:
+ * four reads of the integral whatever the size of the rectangle.
+ * It is computed once per frame and then shared by all the coins, also across threads
+ * since it is never modified afterwards.
+ * The sums are 32 bit integers up to MAX_INT_PIXELS pixels, doubles over that.
+ */
+public class RegionStats {
+
+    //largest frame whose 8 bit sums cannot overflow an int
+    private static final long MAX_INT_PIXELS = Integer.MAX_VALUE / 255;
+
+    private Mat mSum;
+    private int mChannels;
+    private int mRows;
+    private int mCols;
+    private boolean mIntSums;
+
+    public RegionStats(Mat frame) {
+        mChannels = frame.channels();
+        mRows = frame.rows();
+        mCols = frame.cols();
+        mIntSums = frame.total() <= MAX_INT_PIXELS;
+        mSum = new Mat();
+        Imgproc.integral(frame, mSum, mIntSums ? CvType.CV_32S : CvType.CV_64F);
+    }
+
+    /* Mean of every channel over the rectangle [x0, x1) x [y0, y1), clipped to the frame.
+     * Returns false, leaving mean untouched, when nothing is left after clipping.
+     */
+    public boolean mean(int x0, int y0, int x1, int y1, double[] mean) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(mCols, x1);
+        y1 = Math.min(mRows, y1);
+        if (x1 <= x0 || y1 <= y0)
+            return false;
+
+        //sum = S(y1, x1) - S(y0, x1) - S(y1, x0) + S(y0, x0)
+        double[] sum = new double[mChannels];
+        add(y1, x1, 1, sum);
+        add(y0, x1, -1, sum);
+        add(y1, x0, -1, sum);
+        add(y0, x0, 1, sum);
+
+        double area = (double) (x1 - x0) * (y1 - y0);
+        for (int c = 0; c < mChannels && c < mean.length; c++)
+            mean[c] = sum[c] / area;
+        return true;
+    }
+
+    private void add(int row, int col, int sign, double[] sum) {
+        if (mIntSums) {
+            int[] corner = new int[mChannels];
+            mSum.get(row, col, corner);
+            for (int c = 0; c < mChannels; c++)
+                sum[c] += sign * (double) corner[c];
+        } else {
+            double[] corner = mSum.get(row, col);
+            for (int c = 0; c < mChannels; c++)
+                sum[c] += sign * corner[c];
+        }
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    public void release() {
+        mSum.release();
+    }
+}
@@ -0,0 +1,100 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewYuvFrame;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Stand-in for the JavaCameraView frame, built from a recorded frame file.
+ * Raw ".nv21" files hold the preview buffer as delivered by the camera,
+ * any other file is read with Imgcodecs and treated as an already converted frame.
+ */
+public class ReplayCameraFrame implements CvCameraViewFrame, CvCameraViewYuvFrame {
+
+    private Mat mSourceData;
+    private Mat mRgba;
+    private Mat mGray;
+    private boolean mIsNv21;
+
+    private ReplayCameraFrame(Mat sourceData, Mat gray, boolean isNv21) {
+        mSourceData = sourceData;
+        mRgba = new Mat();
+        mGray = gray;
+        mIsNv21 = isNv21;
+    }
+
+    public static ReplayCameraFrame load(File file, int width, int height) throws IOException {
+        if (file.getName().endsWith(".nv21")) {
+            byte[] data = readFully(file, width * height * 3 / 2);
+            Mat yuv = new Mat(height + (height / 2), width, CvType.CV_8UC1);
+            yuv.put(0, 0, data);
+            return new ReplayCameraFrame(yuv, yuv.submat(0, height, 0, width), true);
+        }
+
+        Mat bgr = Imgcodecs.imread(file.getPath());
+        if (bgr.empty())
+            throw new IOException("Cannot decode frame " + file);
+        Mat rgba = new Mat();
+        Mat gray = new Mat();
+        Imgproc.cvtColor(bgr, rgba, Imgproc.COLOR_BGR2RGBA);
+        Imgproc.cvtColor(bgr, gray, Imgproc.COLOR_BGR2GRAY);
+        bgr.release();
+        return new ReplayCameraFrame(rgba, gray, false);
+    }
+
+    /* The returned Mat is reused between calls, as the camera frame does,
+     * and is rebuilt from the recorded data so previous overlays are dropped.
+     */
+    @Override
+    public Mat rgba() {
+        if (mIsNv21)
+            Imgproc.cvtColor(mSourceData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+        else
+            mSourceData.copyTo(mRgba);
+        return mRgba;
+    }
+
+    @Override
+    public Mat gray() {
+        return mGray;
+    }
+
+    @Override
+    public Mat nv21() {
+        return mIsNv21 ? mSourceData : null;
+    }
+
+    public void release() {
+        mSourceData.release();
+        mRgba.release();
+        mGray.release();
+    }
+
+    private static byte[] readFully(File file, int size) throws IOException {
+        if (file.length() < size)
+            throw new IOException("Frame " + file + " is smaller than " + size + " bytes");
+
+        byte[] data = new byte[size];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < size) {
+                int n = in.read(data, read, size - read);
+                if (n < 0)
+                    throw new IOException("Unexpected end of " + file);
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+}
@@ -7,7 +7,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.io.OutputStream;
 
-import android.graphics.Color;
 import android.util.DisplayMetrics;
 import android.util.Log;
 
@@ -41,19 +40,14 @@ import static org.opencv.imgproc.Imgproc.cvtColor;
  */
 public class ResultProcessor {
 
-    private static final int GRID_SIZE_X = 6;
-    private static final int GRID_SIZE_Y = 3;
-
-    private static final int GRID_AREA = GRID_SIZE_X * GRID_SIZE_Y;
-    private static final int GRID_EMPTY_INDEX = GRID_AREA - 1;
     private static final String TAG = "Puzzle15Processor";
 
     //define colors
-    private static final Scalar COLOR_GREY = new Scalar(0x33, 0x33, 0x33, 0xFF);
     private static final Scalar COLOR_BLACK = new Scalar(0x00, 0x00, 0x00, 0xFF);
     private static final Scalar COLOR_WHITE = new Scalar(0xFF, 0xFF, 0xFF, 0xFF);
-    private static final Scalar COLOR_RED = new Scalar(0xFF, 0x00, 0x00, 0xFF);
-    private static final Scalar COLOR_BLUE = new Scalar(0xF0, 0xF8, 0xFF, 0xFF);
+    private static final Size BLUR_SIZE = new Size(5, 5);
+    //radius feature: fraction of the frame height scaled to the range of the colours
+    private static final float SIZE_FEATURE_SCALE = 255f;
 
     private int screenWidth;
     private int screenHeight;
@@ -62,23 +56,21 @@ public class ResultProcessor {
     private float green;
     private float blue;
 
-    private int[]   mIndexes;
-    private int[]   mTextWidths;
-    private int[]   mTextHeights;
-
-    private Mat mRgba15;
-    private Mat[] mCells15;
+    private Mat mCoinMask;
+    private Mat mCoinScaled;
+    private ResultsView mResultsView;
     private String prediction;
     private boolean mShowRGB = false;
+    private CoinClassifier mClassifier;
+    private CoinClassificationCache mCache;
+    private Nv21ChromaSampler mChromaSampler;
+    private SizeRatioClassifier mSizeClassifier;
 
     public ResultProcessor() {
-        mTextWidths = new int[GRID_AREA];
-        mTextHeights = new int[GRID_AREA];
-
-        mIndexes = new int [GRID_AREA];
-
-        for (int i = 0; i < GRID_AREA; i++)
-            mIndexes[i] = i;
+        mCoinMask = new Mat();
+        mCoinScaled = new Mat();
+        mClassifier = new HeuristicCoinClassifier();
+        mCache = new CoinClassificationCache();
     }
 
 
@@ -87,206 +79,297 @@ public class ResultProcessor {
      * If the frames will be different size - then the result is unpredictable
      */
     public synchronized void prepareGameSize(int width, int height) {
-        mRgba15 = new Mat(height, width, CV_8UC4);
-        mCells15 = new Mat[GRID_AREA];
+        if (mResultsView != null)
+            mResultsView.release();
+        mResultsView = new ResultsView(width, height, mShowRGB);
 
         screenWidth=width;
         screenHeight=height;
-
-        for (int i = 0; i < GRID_SIZE_Y; i++) {
-            for (int j = 0; j < GRID_SIZE_X; j++) {
-                int k = i * GRID_SIZE_X + j;
-                int colEnd;
-                if(j!=(GRID_SIZE_X-1)){
-                  colEnd=(j+1) * height / GRID_SIZE_Y;
-                }else{
-                    colEnd=width;
-                }
-                mCells15[k] = mRgba15.submat(
-                        i * height / GRID_SIZE_Y, (i + 1) * height / GRID_SIZE_Y,
-                        j * height / GRID_SIZE_Y, colEnd);
-            }
-        }
-
-        for (int i = 0; i < GRID_AREA; i++) {
-            Size s = Imgproc.getTextSize(Integer.toString(i + 1), 3/* CV_FONT_HERSHEY_COMPLEX */, 2, 2, null);
-            mTextHeights[i] = (int) s.height;
-            mTextWidths[i] = (int) s.width;
-        }
+        mChromaSampler = new Nv21ChromaSampler(width, height);
     }
 
-    /* this method to be called from the outside. it processes the frame and shuffles
-     * the tiles as specified by mIndexes array
+    /* this method to be called from the outside. It shows the first page of the
+     * coins; the grid grows with the number of coins, and trays that do not fit
+     * in it are paged, see nextPage.
      */
     public synchronized Mat assemblyFrame(ArrayList<Mat> matCollection, ArrayList<String> coinCollection) {
-        // copy tiles
-        //i: index of number of tile in screen
-        //idx: index of number of coin photo of ArrayList
-        int fontscale=0;
-        int xpos=0;
-        if(mShowRGB==true){
-            xpos=2;
-            fontscale=1;
-        }else{
-            xpos=85;
-            fontscale=2;
-        }
-        int idx = 0;
-        int result = 0;
-
-        for (int i = 0; i < GRID_AREA; i++){
-            if (((i+1) % GRID_SIZE_X) == 0) {
-                mCells15[i].setTo(COLOR_WHITE);
-            }else if (idx>=matCollection.size()){
-                mCells15[i].setTo(COLOR_GREY);
+        return mResultsView.show(matCollection, coinCollection);
+    }
 
-            }else{
-                matCollection.get(idx).copyTo(mCells15[i]);
+    public synchronized boolean hasNextPage() {
+        return mResultsView.hasNextPage();
+    }
 
-                Imgproc.putText(mCells15[i], coinCollection.get(idx), new Point(xpos,
-                        (screenHeight / GRID_SIZE_Y + mTextHeights[idx])/2), 3/* CV_FONT_HERSHEY_COMPLEX */, fontscale, COLOR_RED, 3);
+    //shows the next page of the coins passed to assemblyFrame
+    public synchronized Mat nextPage() {
+        return mResultsView.nextPage();
+    }
 
-                result=result+Integer.parseInt(coinCollection.get(idx).substring(0, 1));
+    public synchronized Mat showPage(int page) {
+        return mResultsView.showPage(page);
+    }
 
-                idx++;
-            }
-        }
+    public synchronized int getPage() {
+        return mResultsView.getPage();
+    }
 
-        Imgproc.putText(mCells15[16], "$"+Integer.toString(result), new Point(65,
-                (screenHeight / GRID_SIZE_Y + mTextHeights[idx])/2), 3/* CV_FONT_HERSHEY_COMPLEX */, 2, COLOR_RED, 3);
+    public synchronized int getPageCount() {
+        return mResultsView.getPageCount();
+    }
 
-        //draw grid
-        int rows = screenHeight;
-        drawGrid(rows, mRgba15);
+    public synchronized Mat getFrame(Mat inputPicture, Mat circles, int index) {
+        double[] vCircle = circles.get(0, index);
+        FrameColorStats stats = new FrameColorStats(inputPicture, null, null);
+        CoinResult coin = measureCoin(inputPicture, stats, (float) vCircle[0], (float) vCircle[1], (float) vCircle[2],
+                screenWidth, screenHeight, mCoinMask, mCoinScaled);
+        stats.release();
+        CoinResult result = classifyMeasured(new CoinResult[]{coin})[0];
+        prediction = result.getLabel();
+        return result.getCrop();
+    }
 
-        return mRgba15;
+    public CoinResult[] classifyCoins(Mat inputPicture, Mat circles) {
+        return classifyCoins(inputPicture, null, circles);
     }
 
-    public synchronized Mat getFrame(Mat inputPicture, Mat circles, int index) {
-        int squareSize=screenHeight / GRID_SIZE_Y;
+    /* Classifies all the coins of the circles Mat (as returned by HoughCircles) in one pass.
+     * The circles are read with a single transfer, the colour statistics of the frame are
+     * computed once and the mask and scaling buffers are shared by all the coins.
+     * nv21 is the camera buffer of the same frame, or null to take the colours from the
+     * RGBA frame. Only local buffers are used, so it is safe to call it from several
+     * threads at once.
+     */
+    public CoinResult[] classifyCoins(Mat inputPicture, byte[] nv21, Mat circles) {
+        int width;
+        int height;
+        synchronized (this) {
+            width = screenWidth;
+            height = screenHeight;
+        }
 
+        int count = circles.cols();
+        CoinResult[] coins = new CoinResult[count];
+        if (count == 0)
+            return coins;
+
+        float[] circleData = HoughCircleDetector.readCircles(circles, null);
+        FrameColorStats stats = createColorStats(inputPicture, nv21);
+        Mat coinMask = new Mat();
+        Mat coinScaled = new Mat();
+        for (int i = 0; i < count; i++) {
+            coins[i] = measureCoin(inputPicture, stats, circleData[3 * i], circleData[3 * i + 1], circleData[3 * i + 2],
+                    width, height, coinMask, coinScaled);
+        }
+        stats.release();
+        coinMask.release();
+        coinScaled.release();
+        return classifyMeasured(coins);
+    }
 
-        double[] vCircle = circles.get(0, index);
-        int xCircle = (int) Math.round(vCircle[0]);
-        int yCircle = (int) Math.round(vCircle[1]);
-        int radius = (int) Math.round(vCircle[2]);
+    /* Crops a single coin and measures its colour, with buffers of its own, for callers
+     * that spread the coins of a frame over several threads. stats are the colour
+     * statistics of inputPicture, shared by all the coins. The result has no denomination
+     * yet: see classifyMeasured.
+     */
+    public CoinResult measureCoin(Mat inputPicture, FrameColorStats stats, float x, float y, float radius) {
+        int width;
+        int height;
+        synchronized (this) {
+            width = screenWidth;
+            height = screenHeight;
+        }
 
-        Mat myCoin = new Mat();
-        Mat mask = new Mat();
-        Mat myCoinScaled = new Mat();
-        Mat blackMat = new Mat(squareSize, squareSize, CV_8UC4);
-        blackMat.setTo(COLOR_BLACK);
+        Mat coinMask = new Mat();
+        Mat coinScaled = new Mat();
+        CoinResult result = measureCoin(inputPicture, stats, x, y, radius, width, height, coinMask, coinScaled);
+        coinMask.release();
+        coinScaled.release();
+        return result;
+    }
 
-        Mat subMat = inputPicture.submat(checkRow(yCircle-radius),checkRow(yCircle+radius),
-                checkCols(xCircle-radius),checkCols(xCircle+radius));
+    /* Colour statistics of a frame for measureCoin: sampled from the NV21 camera
+     * buffer when there is one, from the integral image of the RGBA frame otherwise
+     */
+    public FrameColorStats createColorStats(Mat inputPicture, byte[] nv21) {
+        Nv21ChromaSampler sampler;
+        synchronized (this) {
+            sampler = mChromaSampler;
+        }
+        return new FrameColorStats(inputPicture, nv21, sampler);
+    }
 
+    /* Decides the denomination of already measured coins. When a currency size table
+     * is set the ratios of the radii decide first; the colour path is only taken when
+     * they are ambiguous.
+     */
+    public CoinResult[] classifyMeasured(CoinResult[] coins) {
+        CoinClassifier classifier;
+        CoinClassificationCache cache;
+        SizeRatioClassifier sizeClassifier;
+        int height;
+        synchronized (this) {
+            classifier = mClassifier;
+            cache = mCache;
+            sizeClassifier = mSizeClassifier;
+            height = screenHeight;
+        }
 
-        if((subMat.cols()>0)&&(subMat.rows()>0)) {
-            subMat.copyTo(myCoin);
-            subMat.copyTo(mask);
-        }else{
-            blackMat.copyTo(myCoin);
-            blackMat.copyTo(mask);
+        int count = coins.length;
+        if (count == 0)
+            return coins;
+
+        String[] denominations = new String[count];
+        float[] confidences = new float[count];
+        boolean bySize = false;
+        if (sizeClassifier != null) {
+            float[] radii = new float[count];
+            for (int i = 0; i < count; i++)
+                radii[i] = coins[i].getRadius();
+            bySize = sizeClassifier.classify(radii, denominations, confidences);
+        }
+        if (!bySize)
+            classifyByColour(coins, classifier, cache, height, denominations, confidences);
+
+        CoinResult[] results = new CoinResult[count];
+        for (int i = 0; i < count; i++) {
+            CoinResult coin = coins[i];
+            String label = denominations[i];
+            if(mShowRGB==true) {
+                label=label+Integer.toString(coin.getRed()) + "-" + Integer.toString(coin.getBlue())+ "-" + Integer.toString(coin.getGreen());
+            }
+            results[i] = coin.withDenomination(denominations[i], confidences[i], label);
         }
+        return results;
+    }
 
-        mask.setTo(COLOR_BLACK);
-        Point centerMask = new Point(radius, radius);
+    /* Colour path: a single call to the classifier, so batch backends see all the coins
+     * of the frame at once. Coins already seen, according to the classification cache,
+     * keep their decision and are not classified again.
+     */
+    private void classifyByColour(CoinResult[] coins, CoinClassifier classifier, CoinClassificationCache cache,
+                                  int height, String[] denominations, float[] confidences) {
+        int count = coins.length;
+        long[] hashes = new long[count];
+        int[] sizeBuckets = new int[count];
+        int[] colourBuckets = new int[count];
+        int[] misses = new int[count];
+        int missCount = 0;
+        for (int i = 0; i < count; i++) {
+            hashes[i] = CoinClassificationCache.appearanceHash(coins[i].getCrop());
+            sizeBuckets[i] = CoinClassificationCache.sizeBucket(coins[i].getRadius() * SIZE_FEATURE_SCALE / height);
+            colourBuckets[i] = CoinClassificationCache.colourBucket(coins[i].getRed(), coins[i].getGreen(),
+                    coins[i].getBlue());
+            CoinClassificationCache.Entry entry = cache.get(hashes[i], sizeBuckets[i], colourBuckets[i]);
+            if (entry != null) {
+                denominations[i] = entry.getDenomination();
+                confidences[i] = entry.getConfidence();
+            } else {
+                misses[missCount++] = i;
+            }
+        }
 
-        Imgproc.circle(mask,centerMask, radius, COLOR_WHITE, -1);
-        Core.bitwise_and(mask,myCoin,mask);
+        if (missCount > 0) {
+            float[] featureData = new float[missCount * CoinClassifier.FEATURE_COUNT];
+            List<Mat> crops = new ArrayList<>(missCount);
+            for (int m = 0; m < missCount; m++) {
+                CoinResult coin = coins[misses[m]];
+                int row = m * CoinClassifier.FEATURE_COUNT;
+                featureData[row + CoinClassifier.FEATURE_RED] = coin.getRed();
+                featureData[row + CoinClassifier.FEATURE_GREEN] = coin.getGreen();
+                featureData[row + CoinClassifier.FEATURE_BLUE] = coin.getBlue();
+                featureData[row + CoinClassifier.FEATURE_SIZE] = coin.getRadius() * SIZE_FEATURE_SCALE / height;
+                crops.add(coin.getCrop());
+            }
+            Mat features = new Mat(missCount, CoinClassifier.FEATURE_COUNT, CvType.CV_32F);
+            features.put(0, 0, featureData);
+
+            String[] missDenominations = new String[missCount];
+            float[] missConfidences = new float[missCount];
+            classifier.classify(features, crops, missDenominations, missConfidences);
+            features.release();
+
+            for (int m = 0; m < missCount; m++) {
+                int i = misses[m];
+                denominations[i] = missDenominations[m];
+                confidences[i] = missConfidences[m];
+                cache.put(hashes[i], sizeBuckets[i], colourBuckets[i], denominations[i], confidences[i]);
+            }
+        }
+    }
 
-        Bitmap myCoinBitmap;
-        Bitmap maskBitmap;
-        Bitmap ScaledBitmap;
+    //the cached decisions belong to the previous classifier, so they are dropped
+    public synchronized void setClassifier(CoinClassifier classifier) {
+        mClassifier = classifier;
+        mCache.clear();
+    }
 
-        //create bitmap of coin photo (only for debugging)
-        myCoinBitmap = Bitmap.createBitmap(myCoin.cols(), myCoin.rows(), Bitmap.Config.ARGB_8888);
-        Utils.matToBitmap(myCoin, myCoinBitmap);
+    //currency size table for the radius ratios, null to classify by colour only
+    public synchronized void setSizeClassifier(SizeRatioClassifier sizeClassifier) {
+        mSizeClassifier = sizeClassifier;
+    }
 
-        //create bitmap of mask (that contains processed coin)
-        maskBitmap = Bitmap.createBitmap(mask.cols(), mask.rows(), Bitmap.Config.ARGB_8888);
-        Utils.matToBitmap(mask, maskBitmap);
+    public synchronized CoinClassificationCache getCache() {
+        return mCache;
+    }
 
-        //scale bitmap to show in screen
-        ScaledBitmap = Bitmap.createScaledBitmap(maskBitmap, squareSize, squareSize, false);
-        Utils.bitmapToMat(ScaledBitmap, myCoinScaled);
+    public synchronized CoinClassifier getClassifier() {
+        return mClassifier;
+    }
 
-        //PROCESAMIENTO
-        myCoinScaled.convertTo(myCoinScaled, -1, 1, -30);
-        Imgproc.GaussianBlur(myCoinScaled, myCoinScaled,new Size(5,5), 0);
+    private CoinResult measureCoin(Mat inputPicture, FrameColorStats stats, float x, float y, float r,
+                                   int width, int height, Mat coinMask, Mat coinScaled) {
+        int squareSize=height / ResultsView.MIN_ROWS;
 
-        int colour = 0;
-        int red = 0;
-        int blue = 0;
-        int green = 0;
+        int xCircle = Math.round(x);
+        int yCircle = Math.round(y);
+        int radius = Math.round(r);
 
-        for( int i = squareSize/4; i < 3*squareSize/4; i++ ) {
-            for (int j = squareSize/4; j < 3*squareSize/4; j++) {
-                colour = ScaledBitmap.getPixel(i, j);
-                red = red + Color.red(colour);
-                green = green + Color.green(colour);
-                blue = blue + Color.blue(colour);
+        Mat subMat = inputPicture.submat(checkLimit(yCircle-radius, height),checkLimit(yCircle+radius, height),
+                checkLimit(xCircle-radius, width),checkLimit(xCircle+radius, width));
 
-            }
-        }
-        red = red / ((squareSize/2) * (squareSize/2));
-        green = green / ((squareSize/2) * (squareSize/2));
-        blue = blue / ((squareSize/2) * (squareSize/2));
-
-        int contrast=red-green;
-        if(contrast>30) {
-            prediction = "1c";
-        }else if (contrast<4){
-            prediction = "2p";
+        //mask the coin: only the disc is kept, the rest is black
+        if((subMat.cols()>0)&&(subMat.rows()>0)) {
+            coinMask.create(subMat.rows(), subMat.cols(), CV_8UC4);
+            coinMask.setTo(COLOR_BLACK);
+            Imgproc.circle(coinMask, new Point(radius, radius), radius, COLOR_WHITE, -1);
+            Core.bitwise_and(coinMask, subMat, coinMask);
         }else{
-            prediction = "1p";
+            coinMask.create(squareSize, squareSize, CV_8UC4);
+            coinMask.setTo(COLOR_BLACK);
         }
+        subMat.release();
 
-        if(mShowRGB==true) {
-            prediction=prediction+Integer.toString(red) + "-" + Integer.toString(blue)+ "-" + Integer.toString(green);
-        }
-
-        return myCoinScaled;
-    }
-
-    public synchronized String getPrediction(){
-        return prediction;
-    }
+        //scale to the cell size, nearest neighbour as the former Bitmap scaling
+        coinScaled.create(squareSize, squareSize, CV_8UC4);
+        Imgproc.resize(coinMask, coinScaled, coinScaled.size(), 0, 0, Imgproc.INTER_NEAREST);
 
-    private void drawGrid(int rows, Mat drawMat) {
-        int squareSize=rows / GRID_SIZE_Y;
-        int xLimit=squareSize*(GRID_SIZE_X-1);
+        //average colour of the coin, its cost does not depend on the coin size
+        int[] rgb = new int[3];
+        stats.meanRgb(x, y, r, rgb);
+        int red = rgb[0];
+        int green = rgb[1];
+        int blue = rgb[2];
 
-        //draw horizontal lines
-        for (int i = 1; i < GRID_SIZE_Y; i++) {
-            Imgproc.line(drawMat, new Point(0, i * squareSize), new Point(xLimit, i* squareSize), COLOR_BLUE, 3);
-        }
+        //PROCESAMIENTO
+        Mat myCoinScaled = new Mat();
+        coinScaled.convertTo(myCoinScaled, -1, 1, -30);
+        Imgproc.GaussianBlur(myCoinScaled, myCoinScaled, BLUR_SIZE, 0);
 
-        //draw vertical lines
-        for (int i = 1; i < GRID_SIZE_X; i++) {
-            Imgproc.line(drawMat, new Point(i * squareSize, 0), new Point(i * squareSize, rows), COLOR_BLUE, 3);
-        }
+        return new CoinResult(x, y, r, myCoinScaled, null, 0, red, green, blue, null);
     }
 
-    //check if row is inside bounds, if not, return limits
-    private int checkRow(int rows){
-        if((rows<0)){
-            return 0;
-        }else if(rows>screenHeight){
-            return screenHeight;
-        }else{
-            return rows;
-        }
+    public synchronized String getPrediction(){
+        return prediction;
     }
 
-    //check if cols is inside bounds, if not, return limits
-    private int checkCols(int cols){
-        if((cols<0)){
+    //check if row or col is inside bounds, if not, return limits
+    private static int checkLimit(int value, int limit){
+        if((value<0)){
             return 0;
-        }else if(cols>screenWidth){
-            return screenWidth;
+        }else if(value>limit){
+            return limit;
         }else{
-            return cols;
+            return value;
         }
     }
 
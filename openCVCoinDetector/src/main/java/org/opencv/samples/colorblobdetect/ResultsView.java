@@ -0,0 +1,314 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import static org.opencv.core.CvType.CV_8UC1;
+import static org.opencv.core.CvType.CV_8UC4;
+
+/**
+ * Results screen: the classified coins in a grid of square cells with the total money
+ * in the last one, and a white column on the right. When the coins need several pages
+ * the last cell of every page is a summary cell with the total and the page number.
+ * The grid adapts to the number of coins: it starts with MIN_ROWS rows, as the original
+ * 6x3 layout, and gets more and smaller cells up to MAX_ROWS rows. Trays with more coins
+ * than that are split in pages; only the cells of the visible page exist, as views of
+ * the screen Mat, and only the crops of that page are scaled.
+ * Rendering is incremental: the grid lines are drawn once per layout, and only the cells
+ * whose crop or label changed are drawn again, through a mask that keeps the lines.
+ * Labels are drawn from sprite caches sized for the layout.
+ */
+public class ResultsView {
+
+    public static final int MIN_ROWS = 3;
+    public static final int MAX_ROWS = 6;
+    //columns of the original layout, its last one is the white column
+    private static final int BASE_COLUMNS = 6;
+    private static final int LINE_WIDTH = 3;
+
+    private static final Scalar COLOR_GREY = new Scalar(0x33, 0x33, 0x33, 0xFF);
+    private static final Scalar COLOR_WHITE = new Scalar(0xFF, 0xFF, 0xFF, 0xFF);
+    private static final Scalar COLOR_RED = new Scalar(0xFF, 0x00, 0x00, 0xFF);
+    private static final Scalar COLOR_BLUE = new Scalar(0xF0, 0xF8, 0xFF, 0xFF);
+    private static final int FONT = 3/* CV_FONT_HERSHEY_COMPLEX */;
+
+    //what a cell shows
+    private static final int CELL_UNKNOWN = -1;
+    private static final int CELL_EMPTY = 0;
+    private static final int CELL_COIN = 1;
+    private static final int CELL_SUMMARY = 2;
+
+    private int mWidth;
+    private int mHeight;
+    //cell size and coin area width of the MIN_ROWS layout, the labels are scaled from it
+    private int mBaseCellSize;
+    private int mCoinAreaWidth;
+    private boolean mShowRGB;
+
+    private Mat mScreen;
+    private Mat mCellPixels;
+    private int mRows;
+    private int mColumns;
+    private int mCellSize;
+    private double mLabelScale;
+
+    private List<Mat> mCrops;
+    private List<String> mLabels;
+    private int mTotal;
+    private int mPage;
+    private int mPageCount;
+    private boolean mSummaryShared;
+
+    //visible cells: views of the screen, the pixels not covered by the grid lines,
+    //and what they were last drawn with
+    private Mat[] mCells;
+    private Mat[] mCellMasks;
+    private int[] mCellKinds;
+    private Mat[] mCellCrops;
+    private String[] mCellLabels;
+    private boolean[] mCellDirty;
+    private String mTotalLabel;
+    private String mPageLabel;
+    private Mat mCellBuffer;
+
+    private LabelSpriteCache mLabelSprites;
+    private LabelSpriteCache mTotalSprites;
+    private LabelSpriteCache mPageSprites;
+
+    public ResultsView(int width, int height, boolean showRGB) {
+        mWidth = width;
+        mHeight = height;
+        mBaseCellSize = height / MIN_ROWS;
+        mCoinAreaWidth = (BASE_COLUMNS - 1) * mBaseCellSize;
+        mShowRGB = showRGB;
+
+        mScreen = new Mat(height, width, CV_8UC4, COLOR_WHITE);
+        mCellPixels = new Mat(height, width, CV_8UC1);
+        mCellBuffer = new Mat();
+        mCrops = new ArrayList<>();
+        mLabels = new ArrayList<>();
+        mCells = new Mat[0];
+        mCellMasks = new Mat[0];
+    }
+
+    /* Shows the first page of the given coins. The first digit of every label is
+     * the value of the coin.
+     */
+    public Mat show(List<Mat> crops, List<String> labels) {
+        mCrops.clear();
+        mCrops.addAll(crops);
+        mLabels.clear();
+        mLabels.addAll(labels);
+        mTotal = 0;
+        for (String label : labels)
+            mTotal += Integer.parseInt(label.substring(0, 1));
+
+        int rows = MIN_ROWS;
+        while (rows < MAX_ROWS && cellsPerPage(rows) < crops.size())
+            rows++;
+        if (rows != mRows)
+            layout(rows);
+        //a single page keeps every cell for the coins and draws the total over the last one,
+        //as the original grid did; pages give the summary a cell of its own
+        mSummaryShared = crops.size() <= cellsPerPage(rows);
+        int coinsPerPage = mSummaryShared ? cellsPerPage(rows) : cellsPerPage(rows) - 1;
+        mPageCount = Math.max(1, (crops.size() + coinsPerPage - 1) / coinsPerPage);
+        mPage = 0;
+        return render();
+    }
+
+    public boolean hasNextPage() {
+        return mPage + 1 < mPageCount;
+    }
+
+    public Mat nextPage() {
+        if (hasNextPage())
+            mPage++;
+        return render();
+    }
+
+    public Mat showPage(int page) {
+        mPage = Math.max(0, Math.min(page, mPageCount - 1));
+        return render();
+    }
+
+    public int getPage() {
+        return mPage;
+    }
+
+    public int getPageCount() {
+        return mPageCount;
+    }
+
+    public int getRows() {
+        return mRows;
+    }
+
+    public int getColumns() {
+        return mColumns;
+    }
+
+    public Mat getScreen() {
+        return mScreen;
+    }
+
+    private int cellsPerPage(int rows) {
+        return rows * (mCoinAreaWidth / (mHeight / rows));
+    }
+
+    /* Builds the cells of a layout and draws its grid lines, on the screen and,
+     * in black, on the mask of the pixels the cells may paint
+     */
+    private void layout(int rows) {
+        for (int k = 0; k < mCells.length; k++) {
+            mCells[k].release();
+            mCellMasks[k].release();
+        }
+
+        mRows = rows;
+        mCellSize = mHeight / rows;
+        mColumns = mCoinAreaWidth / mCellSize;
+        mLabelScale = (double) mCellSize / mBaseCellSize;
+
+        mScreen.setTo(COLOR_WHITE);
+        mCellPixels.setTo(new Scalar(255));
+        drawGrid(mScreen, COLOR_BLUE);
+        drawGrid(mCellPixels, new Scalar(0));
+
+        int cells = mRows * mColumns;
+        mCells = new Mat[cells];
+        mCellMasks = new Mat[cells];
+        mCellKinds = new int[cells];
+        mCellCrops = new Mat[cells];
+        mCellLabels = new String[cells];
+        mCellDirty = new boolean[cells];
+        for (int i = 0; i < mRows; i++) {
+            for (int j = 0; j < mColumns; j++) {
+                int k = i * mColumns + j;
+                mCells[k] = mScreen.submat(i * mCellSize, (i + 1) * mCellSize, j * mCellSize, (j + 1) * mCellSize);
+                mCellMasks[k] = mCellPixels.submat(i * mCellSize, (i + 1) * mCellSize, j * mCellSize, (j + 1) * mCellSize);
+                mCellKinds[k] = CELL_UNKNOWN;
+            }
+        }
+        mTotalLabel = null;
+        mPageLabel = null;
+
+        if (mLabelSprites != null) {
+            mLabelSprites.clear();
+            mTotalSprites.clear();
+            mPageSprites.clear();
+        }
+        mLabelSprites = new LabelSpriteCache(FONT, (mShowRGB ? 1 : 2) * mLabelScale, COLOR_RED, 3);
+        mTotalSprites = new LabelSpriteCache(FONT, 2 * mLabelScale, COLOR_RED, 3);
+        mPageSprites = new LabelSpriteCache(FONT, mLabelScale, COLOR_RED, 2);
+    }
+
+    private Mat render() {
+        int cells = mCells.length;
+        int coinCells = mSummaryShared ? cells : cells - 1;
+        int first = mPage * coinCells;
+        for (int k = 0; k < coinCells; k++) {
+            int idx = first + k;
+            if (idx < mCrops.size())
+                updateCell(k, CELL_COIN, mCrops.get(idx), mLabels.get(idx));
+            else
+                updateCell(k, CELL_EMPTY, null, null);
+        }
+        if (!mSummaryShared)
+            updateCell(cells - 1, CELL_SUMMARY, null, null);
+
+        String totalLabel = "$" + Integer.toString(mTotal);
+        String pageLabel = mPageCount > 1 ? (mPage + 1) + "/" + mPageCount : null;
+        boolean samePage = pageLabel == null ? mPageLabel == null : pageLabel.equals(mPageLabel);
+        if (!totalLabel.equals(mTotalLabel) || !samePage) {
+            mTotalLabel = totalLabel;
+            mPageLabel = pageLabel;
+            mCellDirty[cells - 1] = true;
+        }
+
+        for (int k = 0; k < cells; k++) {
+            if (mCellDirty[k])
+                drawCell(k);
+        }
+        return mScreen;
+    }
+
+    private void updateCell(int cell, int kind, Mat crop, String label) {
+        boolean sameLabel = label == null ? mCellLabels[cell] == null : label.equals(mCellLabels[cell]);
+        if (kind == mCellKinds[cell] && crop == mCellCrops[cell] && sameLabel)
+            return;
+
+        mCellKinds[cell] = kind;
+        mCellCrops[cell] = crop;
+        mCellLabels[cell] = label;
+        mCellDirty[cell] = true;
+    }
+
+    /* Composes a cell aside and copies it in place through the cell mask,
+     * so the grid lines are kept
+     */
+    private void drawCell(int cell) {
+        mCellBuffer.create(mCellSize, mCellSize, CV_8UC4);
+        int textHeight = (int) Imgproc.getTextSize("0", FONT, 2 * mLabelScale, 2, null).height;
+        int textY = (mCellSize + textHeight) / 2;
+
+        if (mCellKinds[cell] == CELL_COIN) {
+            Mat crop = mCellCrops[cell];
+            if (crop.rows() == mCellSize && crop.cols() == mCellSize)
+                crop.copyTo(mCellBuffer);
+            else
+                Imgproc.resize(crop, mCellBuffer, new Size(mCellSize, mCellSize), 0, 0, Imgproc.INTER_AREA);
+            int xpos = (int) Math.round((mShowRGB ? 2 : 85) * mLabelScale);
+            mLabelSprites.draw(mCellBuffer, mCellLabels[cell], new Point(xpos, textY));
+        } else {
+            mCellBuffer.setTo(COLOR_GREY);
+        }
+
+        if (cell == mCells.length - 1) {
+            //over a coin the total goes above its label
+            int totalY = mCellKinds[cell] == CELL_COIN ? textHeight + (int) Math.round(10 * mLabelScale) : textY;
+            mTotalSprites.draw(mCellBuffer, mTotalLabel, new Point(Math.round(65 * mLabelScale), totalY));
+            if (mPageLabel != null)
+                mPageSprites.draw(mCellBuffer, mPageLabel, new Point(Math.round(65 * mLabelScale),
+                        textY + 2 * textHeight));
+        }
+
+        mCellBuffer.copyTo(mCells[cell], mCellMasks[cell]);
+        mCellDirty[cell] = false;
+    }
+
+    private void drawGrid(Mat drawMat, Scalar color) {
+        int xLimit = mCellSize * mColumns;
+
+        //draw horizontal lines
+        for (int i = 1; i < mRows; i++) {
+            Imgproc.line(drawMat, new Point(0, i * mCellSize), new Point(xLimit, i * mCellSize), color, LINE_WIDTH);
+        }
+
+        //draw vertical lines, the last one closes the grid on the white column
+        for (int i = 1; i <= mColumns; i++) {
+            Imgproc.line(drawMat, new Point(i * mCellSize, 0), new Point(i * mCellSize, mHeight), color, LINE_WIDTH);
+        }
+    }
+
+    public void release() {
+        for (int k = 0; k < mCells.length; k++) {
+            mCells[k].release();
+            mCellMasks[k].release();
+        }
+        if (mLabelSprites != null) {
+            mLabelSprites.clear();
+            mTotalSprites.clear();
+            mPageSprites.clear();
+        }
+        mCellBuffer.release();
+        mCellPixels.release();
+        mScreen.release();
+    }
+}
@@ -0,0 +1,195 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decides the denominations from the radii alone: the coins of a frame lie at about
+ * the same distance from the camera, so their radii keep the ratios of the real diameters.
+ * The sorted radii are split in clusters wherever two neighbours differ by more than
+ * CLUSTER_GAP, then the clusters are matched in size order to the currency table with
+ * a common pixels per millimeter scale. The match is only trusted when it fits within
+ * FIT_TOLERANCE and no other assignment fits nearly as well; a single cluster never
+ * is, since any denomination fits it. Otherwise the frame is left to the colour path.
+ *
+ * Size tables have one denomination per line followed by its diameter in millimeters,
+ * e.g. "2p 24.5". Empty lines and lines starting with '#' are skipped.
+ */
+public class SizeRatioClassifier {
+
+    //relative radius step between two clusters
+    private static final float CLUSTER_GAP = 0.04f;
+    //relative error of the clusters to the scaled table allowed for a match
+    private static final float FIT_TOLERANCE = 0.03f;
+
+    private String[] mDenominations;
+    private float[] mDiameters;
+
+    /**
+     * @param denominations - denomination of every table entry
+     * @param diameters - diameter of every table entry, all different
+     */
+    public SizeRatioClassifier(List<String> denominations, float[] diameters) {
+        int count = diameters.length;
+        Integer[] order = sortedOrder(diameters);
+
+        mDenominations = new String[count];
+        mDiameters = new float[count];
+        for (int i = 0; i < count; i++) {
+            if (!CoinResult.isDenomination(denominations.get(order[i])))
+                throw new IllegalArgumentException("Denomination " + denominations.get(order[i])
+                        + " does not start with its value");
+            mDenominations[i] = denominations.get(order[i]);
+            mDiameters[i] = diameters[order[i]];
+        }
+    }
+
+    public static SizeRatioClassifier load(File file) throws IOException {
+        List<String> denominations = new ArrayList<>();
+        List<Float> diameters = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                String[] fields = line.split("\\s+");
+                if (fields.length != 2)
+                    throw new IOException(file + ":" + lineNumber + ": expected a denomination and a diameter");
+                if (!CoinResult.isDenomination(fields[0]))
+                    throw new IOException(file + ":" + lineNumber + ": denomination " + fields[0]
+                            + " does not start with its value");
+                try {
+                    diameters.add(Float.parseFloat(fields[1]));
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+                }
+                denominations.add(fields[0]);
+            }
+        } finally {
+            reader.close();
+        }
+        if (denominations.isEmpty())
+            throw new IOException("No coin sizes in " + file);
+
+        float[] diameterData = new float[diameters.size()];
+        for (int i = 0; i < diameterData.length; i++)
+            diameterData[i] = diameters.get(i);
+        return new SizeRatioClassifier(denominations, diameterData);
+    }
+
+    /* Classifies the coins of a frame from their radii.
+     * Returns false, leaving denominations and confidences untouched, when the
+     * clusters are ambiguous and the colour has to decide.
+     */
+    public boolean classify(float[] radii, String[] denominations, float[] confidences) {
+        int count = radii.length;
+        if (count < 2)
+            return false;
+
+        //sorted-gap split of the radii
+        Integer[] order = sortedOrder(radii);
+        int[] clusterOf = new int[count];
+        float[] clusterSum = new float[count];
+        int[] clusterSize = new int[count];
+        int clusters = 1;
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && radii[order[i]] > radii[order[i - 1]] * (1 + CLUSTER_GAP))
+                clusters++;
+            clusterOf[order[i]] = clusters - 1;
+            clusterSum[clusters - 1] += radii[order[i]];
+            clusterSize[clusters - 1]++;
+        }
+        if (clusters < 2 || clusters > mDiameters.length)
+            return false;
+
+        float[] clusterRadius = new float[clusters];
+        for (int c = 0; c < clusters; c++)
+            clusterRadius[c] = clusterSum[c] / clusterSize[c];
+
+        //every size ordered assignment of the clusters to the table, keeping the two best fits
+        int[] assignment = new int[clusters];
+        int[] best = new int[clusters];
+        float[] errors = {Float.MAX_VALUE, Float.MAX_VALUE};
+        search(clusterRadius, clusterSize, assignment, 0, 0, best, errors);
+
+        if (errors[0] > FIT_TOLERANCE || errors[1] <= errors[0] + FIT_TOLERANCE)
+            return false;
+
+        float confidence = 0.5f + 0.5f * Math.min(1f, (errors[1] - errors[0]) / (2 * FIT_TOLERANCE));
+        for (int i = 0; i < count; i++) {
+            denominations[i] = mDenominations[best[clusterOf[i]]];
+            confidences[i] = confidence;
+        }
+        return true;
+    }
+
+    private void search(float[] clusterRadius, int[] clusterSize, int[] assignment, int cluster, int firstEntry,
+                        int[] best, float[] errors) {
+        int clusters = clusterRadius.length;
+        if (cluster == clusters) {
+            float error = fitError(clusterRadius, clusterSize, assignment);
+            if (error < errors[0]) {
+                errors[1] = errors[0];
+                errors[0] = error;
+                System.arraycopy(assignment, 0, best, 0, clusters);
+            } else if (error < errors[1]) {
+                errors[1] = error;
+            }
+            return;
+        }
+        for (int entry = firstEntry; entry <= mDiameters.length - (clusters - cluster); entry++) {
+            assignment[cluster] = entry;
+            search(clusterRadius, clusterSize, assignment, cluster + 1, entry + 1, best, errors);
+        }
+    }
+
+    /* Largest relative error of the clusters to their table diameters, with the
+     * least squares scale weighted by the number of coins of every cluster
+     */
+    private float fitError(float[] clusterRadius, int[] clusterSize, int[] assignment) {
+        float numerator = 0;
+        float denominator = 0;
+        for (int c = 0; c < clusterRadius.length; c++) {
+            float diameter = mDiameters[assignment[c]];
+            numerator += clusterSize[c] * clusterRadius[c] * diameter;
+            denominator += clusterSize[c] * diameter * diameter;
+        }
+        float scale = numerator / denominator;
+
+        float error = 0;
+        for (int c = 0; c < clusterRadius.length; c++) {
+            float expected = scale * mDiameters[assignment[c]];
+            error = Math.max(error, Math.abs(clusterRadius[c] - expected) / expected);
+        }
+        return error;
+    }
+
+    //indexes of values in increasing value order
+    private static Integer[] sortedOrder(final float[] values) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < values.length; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Float.compare(values[a], values[b]);
+            }
+        });
+        return order;
+    }
+
+    public int getTableSize() {
+        return mDiameters.length;
+    }
+}
@@ -0,0 +1,267 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import android.util.Log;
+
+/**
+ * Archives frames as image files without encoding them on the calling thread.
+ * A submitted frame is copied into a pooled buffer and the copy is encoded with
+ * Imgcodecs.imencode and written through a FileChannel on the exporter thread.
+ * The pool bounds the queue: when all its buffers are waiting to be encoded a new
+ * frame is either dropped (POLICY_DROP) or the caller waits for a buffer (POLICY_BLOCK).
+ * The format comes from the file name extension, as for imwrite.
+ */
+public class SnapshotExporter {
+
+    private static final String TAG = "SnapshotExporter";
+    public static final int POLICY_DROP = 0;
+    public static final int POLICY_BLOCK = 1;
+
+    public static final int DEFAULT_QUEUE_SIZE = 4;
+    private static final int JPEG_QUALITY = 90;
+
+    private final File mDir;
+    private final int mPolicy;
+    private final int mQueueSize;
+    private final BlockingQueue<Mat> mFreeBuffers;
+    private final ExecutorService mExecutor;
+
+    //only touched by the exporter thread
+    private final Mat mBgr;
+    private final MatOfByte mEncoded;
+    private final MatOfInt mJpegParams;
+
+    private final LatencyHistogram mEncodeTime;
+    private final LatencyHistogram mWriteTime;
+    private long mSubmitted;
+    private long mDropped;
+    private long mWritten;
+    private long mFailed;
+    private int mQueueDepth;
+    private int mMaxQueueDepth;
+
+    public SnapshotExporter(File dir, int queueSize, int policy) {
+        mDir = dir;
+        mQueueSize = queueSize;
+        mPolicy = policy;
+        mFreeBuffers = new ArrayBlockingQueue<>(queueSize);
+        for (int i = 0; i < queueSize; i++)
+            mFreeBuffers.add(new Mat());
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SnapshotExporter");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mBgr = new Mat();
+        mEncoded = new MatOfByte();
+        mJpegParams = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY);
+        mEncodeTime = new LatencyHistogram();
+        mWriteTime = new LatencyHistogram();
+    }
+
+    public SnapshotExporter(File dir) {
+        this(dir, DEFAULT_QUEUE_SIZE, POLICY_DROP);
+    }
+
+    /* Queues a copy of frame (RGBA, RGB or gray) to be written as fileName in the
+     * export dir. Returns false when the frame was dropped: the queue was full under
+     * POLICY_DROP, or the caller was interrupted while waiting under POLICY_BLOCK.
+     */
+    public boolean submit(Mat frame, String fileName) {
+        synchronized (this) {
+            mSubmitted++;
+        }
+        Mat buffer;
+        if (mPolicy == POLICY_BLOCK) {
+            try {
+                buffer = mFreeBuffers.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                buffer = null;
+            }
+        } else {
+            buffer = mFreeBuffers.poll();
+        }
+        if (buffer == null) {
+            synchronized (this) {
+                mDropped++;
+            }
+            return false;
+        }
+
+        frame.copyTo(buffer);
+        synchronized (this) {
+            mQueueDepth++;
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, mQueueDepth);
+        }
+        try {
+            mExecutor.execute(new ExportTask(buffer, new File(mDir, fileName)));
+        } catch (RejectedExecutionException e) {
+            //shut down: the frame is dropped
+            synchronized (this) {
+                mQueueDepth--;
+                mDropped++;
+            }
+            mFreeBuffers.add(buffer);
+            return false;
+        }
+        return true;
+    }
+
+    //lets the queued frames be written, new ones are rejected
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        return mExecutor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    public LatencyHistogram getEncodeTime() {
+        return mEncodeTime;
+    }
+
+    public LatencyHistogram getWriteTime() {
+        return mWriteTime;
+    }
+
+    public synchronized int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    public synchronized long getSubmitted() {
+        return mSubmitted;
+    }
+
+    public synchronized long getDropped() {
+        return mDropped;
+    }
+
+    public synchronized long getWritten() {
+        return mWritten;
+    }
+
+    public synchronized long getFailed() {
+        return mFailed;
+    }
+
+    public synchronized String getState() {
+        return String.format(Locale.US, "%d written, %d dropped, %d failed of %d; queue %d/%d (max %d); "
+                        + "encode p50 %.1f ms p95 %.1f ms, write p50 %.1f ms",
+                mWritten, mDropped, mFailed, mSubmitted, mQueueDepth, mQueueSize, mMaxQueueDepth,
+                mEncodeTime.percentile(0.50) / 1e6, mEncodeTime.percentile(0.95) / 1e6,
+                mWriteTime.percentile(0.50) / 1e6);
+    }
+
+    private boolean encode(Mat frame, String extension) {
+        //imencode expects BGR, the camera and the results screen are RGBA
+        Mat image = frame;
+        if (frame.channels() == 4) {
+            Imgproc.cvtColor(frame, mBgr, Imgproc.COLOR_RGBA2BGR);
+            image = mBgr;
+        } else if (frame.channels() == 3) {
+            Imgproc.cvtColor(frame, mBgr, Imgproc.COLOR_RGB2BGR);
+            image = mBgr;
+        }
+        boolean jpeg = extension.equalsIgnoreCase(".jpg") || extension.equalsIgnoreCase(".jpeg");
+        if (jpeg)
+            return Imgcodecs.imencode(extension, image, mEncoded, mJpegParams);
+        return Imgcodecs.imencode(extension, image, mEncoded);
+    }
+
+    /* Written aside and renamed, so an interrupted export never leaves a truncated image
+     */
+    private void write(File file, byte[] data) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        FileOutputStream os = new FileOutputStream(tmpFile);
+        try {
+            FileChannel channel = os.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } finally {
+            os.close();
+        }
+        if (!tmpFile.renameTo(file))
+            throw new IOException("Cannot replace " + file);
+    }
+
+    private class ExportTask implements Runnable {
+        private Mat mBuffer;
+        private File mFile;
+
+        ExportTask(Mat buffer, File file) {
+            mBuffer = buffer;
+            mFile = file;
+        }
+
+        @Override
+        public void run() {
+            String name = mFile.getName();
+            int dot = name.lastIndexOf('.');
+            String extension = dot < 0 ? ".png" : name.substring(dot);
+
+            long start = System.nanoTime();
+            boolean encoded = false;
+            try {
+                encoded = encode(mBuffer, extension);
+                if (!encoded)
+                    Log.e(TAG, "Cannot encode " + mFile);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Cannot encode " + mFile, e);
+            } finally {
+                //the pixels are no longer needed, the buffer goes back to the pool before the write
+                synchronized (SnapshotExporter.this) {
+                    mQueueDepth--;
+                }
+                mFreeBuffers.add(mBuffer);
+            }
+            long encodedAt = System.nanoTime();
+            mEncodeTime.record(encodedAt - start);
+
+            boolean written = false;
+            if (encoded) {
+                try {
+                    write(mFile, mEncoded.toArray());
+                    written = true;
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot write " + mFile, e);
+                }
+                mWriteTime.record(System.nanoTime() - encodedAt);
+            }
+            synchronized (SnapshotExporter.this) {
+                if (written)
+                    mWritten++;
+                else
+                    mFailed++;
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.opencv.core.Mat;
+
+/**
+ * Splits the frame in horizontal strips and runs HoughCircles on all of them in parallel.
+ * Every strip is extended by maxRadius rows on each side, so a coin whose center lies in
+ * the strip is always fully visible to it. A circle is only kept by the strip owning its
+ * center row, and the circles found twice across a seam are merged afterwards.
+ */
+public class TiledCircleDetector implements CircleDetector {
+
+    private HoughCircleDetector mHough;
+    private ExecutorService mExecutor;
+    private int mStrips;
+    private List<StripTask> mTasks;
+    private List<Future<Integer>> mFutures;
+    private float[] mOutput;
+
+    public TiledCircleDetector(HoughCircleDetector hough, int strips) {
+        mHough = hough;
+        mStrips = strips;
+        mExecutor = Executors.newFixedThreadPool(strips, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CoinDetectionStrip");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mTasks = new ArrayList<>();
+        for (int i = 0; i < strips; i++)
+            mTasks.add(new StripTask());
+        mFutures = new ArrayList<>();
+        mOutput = new float[0];
+    }
+
+    public TiledCircleDetector(HoughCircleDetector hough) {
+        this(hough, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public void detect(Mat gray, Mat circles) {
+        int rows = gray.rows();
+        int overlap = mHough.getMaxRadius();
+        double minDist = rows / mHough.getMinDistDivider();
+
+        mFutures.clear();
+        for (int i = 0; i < mStrips; i++) {
+            StripTask task = mTasks.get(i);
+            task.mGray = gray;
+            task.mCoreStart = i * rows / mStrips;
+            task.mCoreEnd = (i + 1) * rows / mStrips;
+            task.mStart = Math.max(0, task.mCoreStart - overlap);
+            task.mEnd = Math.min(rows, task.mCoreEnd + overlap);
+            task.mMinDist = minDist;
+            mFutures.add(mExecutor.submit(task));
+        }
+
+        int total = 0;
+        try {
+            for (Future<Integer> future : mFutures)
+                total += future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Strip detection failed", e.getCause());
+        }
+
+        if (mOutput.length < 3 * total)
+            mOutput = new float[3 * total];
+        int count = 0;
+        for (StripTask task : mTasks) {
+            for (int i = 0; i < task.mCount; i++)
+                count = merge(task.mData, i, count);
+            task.mGray = null;
+        }
+        HoughCircleDetector.writeCircles(mOutput, count, circles);
+    }
+
+    /* Adds circle index of data to the output unless an already merged circle
+     * is the same coin seen from the neighbour strip. Returns the new output count.
+     */
+    private int merge(float[] data, int index, int count) {
+        float x = data[3 * index];
+        float y = data[3 * index + 1];
+        float radius = data[3 * index + 2];
+
+        for (int j = 0; j < count; j++) {
+            float dx = mOutput[3 * j] - x;
+            float dy = mOutput[3 * j + 1] - y;
+            float limit = Math.min(mOutput[3 * j + 2], radius);
+            if (dx * dx + dy * dy < limit * limit)
+                return count;
+        }
+
+        mOutput[3 * count] = x;
+        mOutput[3 * count + 1] = y;
+        mOutput[3 * count + 2] = radius;
+        return count + 1;
+    }
+
+    public int getStrips() {
+        return mStrips;
+    }
+
+    public void release() {
+        mExecutor.shutdown();
+    }
+
+    private class StripTask implements Callable<Integer> {
+        private Mat mGray;
+        private int mStart;
+        private int mEnd;
+        private int mCoreStart;
+        private int mCoreEnd;
+        private double mMinDist;
+
+        private Mat mCircles = new Mat();
+        private float[] mCircleData;
+        private float[] mData = new float[0];
+        private int mCount;
+
+        @Override
+        public Integer call() {
+            Mat strip = mGray.submat(mStart, mEnd, 0, mGray.cols());
+            mHough.detect(strip, mCircles, mMinDist, mHough.getMinRadius(), mHough.getMaxRadius());
+            strip.release();
+
+            int found = mCircles.cols();
+            mCircleData = HoughCircleDetector.readCircles(mCircles, mCircleData);
+            if (mData.length < 3 * found)
+                mData = new float[3 * found];
+
+            //keep only the circles centered in the rows owned by this strip
+            mCount = 0;
+            for (int i = 0; i < found; i++) {
+                float y = mCircleData[3 * i + 1] + mStart;
+                if (y >= mCoreStart && y < mCoreEnd) {
+                    mData[3 * mCount] = mCircleData[3 * i];
+                    mData[3 * mCount + 1] = y;
+                    mData[3 * mCount + 2] = mCircleData[3 * i + 2];
+                    mCount++;
+                }
+            }
+            return mCount;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.opencv.samples.colorblobdetect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.video.KalmanFilter;
+
+/**
+ * Incremental detection: once the coins are found, HoughCircles only runs in a small
+ * window around the position predicted by a Kalman filter for each coin.
+ * A full-frame sweep is done every fullSweepInterval frames, when there is nothing
+ * to track, or as soon as one of the tracked coins is not found in its window.
+ * New coins are therefore picked up at the next periodic sweep.
+ * The sweep itself is done by another CircleDetector (full-frame or pyramid).
+ */
+public class TrackingCircleDetector implements CircleDetector {
+
+    public static final int DEFAULT_FULL_SWEEP_INTERVAL = 15;
+
+    //window half size is radius * WINDOW_SCALE + WINDOW_MARGIN
+    private static final float WINDOW_SCALE = 1.5f;
+    private static final int WINDOW_MARGIN = 8;
+    //allowed radius change between two frames
+    private static final float RADIUS_TOLERANCE = 0.2f;
+
+    private HoughCircleDetector mHough;
+    private CircleDetector mSweepDetector;
+    private int mFullSweepInterval;
+    private int mFramesSinceSweep;
+    private int mFullSweeps;
+    private int mFrames;
+
+    private List<CircleTrack> mTracks;
+    private Mat mFoundCircles;
+    private float[] mCircleData;
+    private float[] mOutput;
+
+    public TrackingCircleDetector(HoughCircleDetector hough, CircleDetector sweepDetector, int fullSweepInterval) {
+        mHough = hough;
+        mSweepDetector = sweepDetector;
+        mFullSweepInterval = fullSweepInterval;
+        mTracks = new ArrayList<>();
+        mFoundCircles = new Mat();
+        mOutput = new float[0];
+    }
+
+    public TrackingCircleDetector(HoughCircleDetector hough) {
+        this(hough, hough, DEFAULT_FULL_SWEEP_INTERVAL);
+    }
+
+    @Override
+    public void detect(Mat gray, Mat circles) {
+        mFrames++;
+        for (CircleTrack track : mTracks)
+            track.predict();
+
+        if (mTracks.isEmpty() || mFramesSinceSweep >= mFullSweepInterval || !trackInWindows(gray)) {
+            fullSweep(gray);
+        } else {
+            mFramesSinceSweep++;
+        }
+
+        int count = mTracks.size();
+        if (mOutput.length < 3 * count)
+            mOutput = new float[3 * count];
+        for (int i = 0; i < count; i++) {
+            CircleTrack track = mTracks.get(i);
+            mOutput[3 * i] = track.mX;
+            mOutput[3 * i + 1] = track.mY;
+            mOutput[3 * i + 2] = track.mRadius;
+        }
+        HoughCircleDetector.writeCircles(mOutput, count, circles);
+    }
+
+    /* Looks for every tracked coin around its predicted position.
+     * Returns false as soon as one of them is lost.
+     */
+    private boolean trackInWindows(Mat gray) {
+        for (CircleTrack track : mTracks) {
+            int half = Math.round(track.mRadius * WINDOW_SCALE) + WINDOW_MARGIN;
+            int x0 = clamp(Math.round(track.mX) - half, 0, gray.cols());
+            int y0 = clamp(Math.round(track.mY) - half, 0, gray.rows());
+            int x1 = clamp(Math.round(track.mX) + half, 0, gray.cols());
+            int y1 = clamp(Math.round(track.mY) + half, 0, gray.rows());
+            if (x1 - x0 < 2 * WINDOW_MARGIN || y1 - y0 < 2 * WINDOW_MARGIN)
+                return false;
+
+            int minRadius = Math.max(mHough.getMinRadius(), Math.round(track.mRadius * (1 - RADIUS_TOLERANCE)));
+            int maxRadius = Math.min(mHough.getMaxRadius(), Math.round(track.mRadius * (1 + RADIUS_TOLERANCE)) + 1);
+            if (maxRadius <= minRadius)
+                return false;
+
+            Mat window = gray.submat(y0, y1, x0, x1);
+            //a min distance as big as the window keeps only the strongest circle
+            mHough.detect(window, mFoundCircles, Math.max(window.rows(), window.cols()), minRadius, maxRadius);
+            window.release();
+
+            if (mFoundCircles.cols() == 0)
+                return false;
+
+            mCircleData = HoughCircleDetector.readCircles(mFoundCircles, mCircleData);
+            track.correct(mCircleData[0] + x0, mCircleData[1] + y0, mCircleData[2]);
+        }
+        return true;
+    }
+
+    /* Full-frame detection. Circles close to an existing track keep its filter,
+     * the rest start new tracks and unmatched tracks are dropped.
+     */
+    private void fullSweep(Mat gray) {
+        mFullSweeps++;
+        mFramesSinceSweep = 0;
+        mSweepDetector.detect(gray, mFoundCircles);
+        mCircleData = HoughCircleDetector.readCircles(mFoundCircles, mCircleData);
+
+        List<CircleTrack> tracks = new ArrayList<>();
+        for (int i = 0; i < mFoundCircles.cols(); i++) {
+            float x = mCircleData[3 * i];
+            float y = mCircleData[3 * i + 1];
+            float radius = mCircleData[3 * i + 2];
+
+            CircleTrack nearest = null;
+            float nearestDistance = Float.MAX_VALUE;
+            for (CircleTrack track : mTracks) {
+                float dx = track.mX - x;
+                float dy = track.mY - y;
+                float distance = dx * dx + dy * dy;
+                if (distance < nearestDistance && distance < track.mRadius * track.mRadius) {
+                    nearest = track;
+                    nearestDistance = distance;
+                }
+            }
+
+            if (nearest != null) {
+                mTracks.remove(nearest);
+                nearest.correct(x, y, radius);
+                tracks.add(nearest);
+            } else {
+                tracks.add(new CircleTrack(x, y, radius));
+            }
+        }
+
+        for (CircleTrack track : mTracks)
+            track.release();
+        mTracks = tracks;
+    }
+
+    public int getTrackCount() {
+        return mTracks.size();
+    }
+
+    //number of frames that needed a full-frame sweep
+    public int getFullSweeps() {
+        return mFullSweeps;
+    }
+
+    public int getFrames() {
+        return mFrames;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(value, max));
+    }
+
+    /**
+     * Constant velocity Kalman filter over the state (x, y, radius, vx, vy)
+     * measured as (x, y, radius).
+     */
+    private static class CircleTrack {
+        private KalmanFilter mFilter;
+        private Mat mMeasurement;
+        private float[] mMeasurementData;
+        private float[] mState;
+        private float mX;
+        private float mY;
+        private float mRadius;
+
+        CircleTrack(float x, float y, float radius) {
+            mFilter = new KalmanFilter(5, 3, 0, CvType.CV_32F);
+            mMeasurement = new Mat(3, 1, CvType.CV_32F);
+            mMeasurementData = new float[3];
+            mState = new float[5];
+
+            Mat transition = Mat.eye(5, 5, CvType.CV_32F);
+            transition.put(0, 3, 1);
+            transition.put(1, 4, 1);
+            mFilter.set_transitionMatrix(transition);
+            mFilter.set_measurementMatrix(Mat.eye(3, 5, CvType.CV_32F));
+
+            Mat processNoise = new Mat(5, 5, CvType.CV_32F);
+            Core.setIdentity(processNoise, new Scalar(1e-2));
+            mFilter.set_processNoiseCov(processNoise);
+            Mat measurementNoise = new Mat(3, 3, CvType.CV_32F);
+            Core.setIdentity(measurementNoise, new Scalar(1));
+            mFilter.set_measurementNoiseCov(measurementNoise);
+            mFilter.set_errorCovPost(Mat.eye(5, 5, CvType.CV_32F));
+
+            Mat state = new Mat(5, 1, CvType.CV_32F);
+            state.put(0, 0, new float[]{x, y, radius, 0, 0});
+            mFilter.set_statePost(state);
+
+            mX = x;
+            mY = y;
+            mRadius = radius;
+        }
+
+        void predict() {
+            update(mFilter.predict());
+        }
+
+        void correct(float x, float y, float radius) {
+            mMeasurementData[0] = x;
+            mMeasurementData[1] = y;
+            mMeasurementData[2] = radius;
+            mMeasurement.put(0, 0, mMeasurementData);
+            update(mFilter.correct(mMeasurement));
+        }
+
+        private void update(Mat state) {
+            state.get(0, 0, mState);
+            mX = mState[0];
+            mY = mState[1];
+            mRadius = mState[2];
+        }
+
+        void release() {
+            mMeasurement.release();
+        }
+    }
+}
@@ -14,6 +14,7 @@ import android.content.DialogInterface;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -36,7 +37,14 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
     private int mState = STOPPED;
     private Bitmap mCacheBitmap;
+    private final Rect mCacheSrcRect = new Rect();
+    private final Rect mCacheDstRect = new Rect();
     private CvCameraViewListener2 mListener;
+    private CvCameraViewDrawListener mDrawListener;
+    private CameraOverlay mOverlay;
+    private final CameraOverlay.Layer mOverlayLayer = new CameraOverlay.Layer();
+    private Paint mOverlayStroke;
+    private Paint mOverlayText;
     private boolean mSurfaceExist;
     private final Object mSyncObject = new Object();
 
@@ -113,6 +121,16 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         public Mat onCameraFrame(Mat inputFrame);
     }
 
+    public interface CvCameraViewDrawListener {
+        /**
+         * This method is invoked after every frame has been drawn on the screen.
+         * It is called from the camera thread and must not block.
+         * @param matToBitmapNanos - the time spent converting the frame to the cache bitmap
+         * @param blitNanos - the time spent drawing the cache bitmap on the surface canvas
+         */
+        public void onCameraFrameDrawn(long matToBitmapNanos, long blitNanos);
+    }
+
     public interface CvCameraViewListener2 {
         /**
          * This method is invoked when camera preview has started. After this method is invoked
@@ -190,6 +208,20 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         public Mat gray();
     };
 
+    /**
+     * Implemented by the frames that are backed by the YUV buffer of the camera,
+     * to read the chroma without an RGBA conversion.
+     */
+    public interface CvCameraViewYuvFrame {
+
+        /**
+         * This method returns the camera buffer as a (height * 3 / 2) x width single channel Mat
+         * in NV21 layout, or null when the camera delivers another format.
+         * Like rgba() and gray(), it is only valid during onCameraFrame.
+         */
+        public Mat nv21();
+    };
+
     public void surfaceChanged(SurfaceHolder arg0, int arg1, int arg2, int arg3) {
         Log.d(TAG, "call surfaceChanged event");
         synchronized(mSyncObject) {
@@ -264,6 +296,22 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         mListener = listener;
     }
 
+    /**
+     * Sets a listener that receives the drawing time of every frame
+     * @param listener - the listener, or null to remove it
+     */
+    public void setCvCameraViewDrawListener(CvCameraViewDrawListener listener) {
+        mDrawListener = listener;
+    }
+
+    /**
+     * Sets the shapes drawn over every frame, after the frame bitmap
+     * @param overlay - the overlay, or null to draw the frames only
+     */
+    public void setOverlay(CameraOverlay overlay) {
+        mOverlay = overlay;
+    }
+
     public void setCvCameraViewListener(CvCameraViewListener listener) {
         CvCameraViewListenerAdapter adapter = new CvCameraViewListenerAdapter(listener);
         adapter.setFrameFormat(mPreviewFormat);
@@ -395,6 +443,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         }
 
         boolean bmpValid = true;
+        long bitmapStart = System.nanoTime();
         if (modified != null) {
             try {
                 Utils.matToBitmap(modified, mCacheBitmap);
@@ -406,7 +455,10 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             }
         }
 
+        long bitmapNanos = System.nanoTime() - bitmapStart;
+
         if (bmpValid && mCacheBitmap != null) {
+            long blitStart = System.nanoTime();
             Canvas canvas = getHolder().lockCanvas();
             if (canvas != null) {
                 canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
@@ -414,24 +466,31 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                     Log.d(TAG, "mStretch value: " + mScale);
 
                 if (mScale != 0) {
-                    canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
+                    mCacheSrcRect.set(0, 0, mCacheBitmap.getWidth(), mCacheBitmap.getHeight());
+                    mCacheDstRect.set((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
                          (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2),
                          (int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2 + mScale*mCacheBitmap.getWidth()),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())), null);
+                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight()));
+                    canvas.drawBitmap(mCacheBitmap, mCacheSrcRect, mCacheDstRect, null);
                 } else {
-                     canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
+                    mCacheSrcRect.set(0, 0, mCacheBitmap.getWidth(), mCacheBitmap.getHeight());
+                    mCacheDstRect.set((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
                          (canvas.getHeight() - mCacheBitmap.getHeight()) / 2,
                          (canvas.getWidth() - mCacheBitmap.getWidth()) / 2 + mCacheBitmap.getWidth(),
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight()), null);
+                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight());
+                    canvas.drawBitmap(mCacheBitmap, mCacheSrcRect, mCacheDstRect, null);
                 }
 
+                if (mOverlay != null)
+                    drawOverlay(canvas);
+
                 if (mFpsMeter != null) {
                     mFpsMeter.measure();
                     mFpsMeter.draw(canvas, 20, 30);
                 }
                 getHolder().unlockCanvasAndPost(canvas);
+                if (mDrawListener != null)
+                    mDrawListener.onCameraFrameDrawn(bitmapNanos, System.nanoTime() - blitStart);
             }
         }
     }
@@ -451,6 +510,37 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
      */
     protected abstract void disconnectCamera();
 
+    /**
+     * Draws the published overlay shapes over the frame bitmap, mapped from frame
+     * pixels to the place and scale of the bitmap on the canvas
+     */
+    private void drawOverlay(Canvas canvas) {
+        if (mOverlayStroke == null) {
+            mOverlayStroke = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mOverlayStroke.setStyle(Paint.Style.STROKE);
+            mOverlayText = new Paint(Paint.ANTI_ALIAS_FLAG);
+        }
+        mOverlay.copyTo(mOverlayLayer);
+        float scale = mScale != 0 ? mScale : 1;
+
+        canvas.save();
+        canvas.translate(mCacheDstRect.left, mCacheDstRect.top);
+        canvas.scale(scale, scale);
+        for (int k = 0; k < mOverlayLayer.getCircleCount(); k++) {
+            mOverlayStroke.setColor(mOverlayLayer.getCircleColor(k));
+            mOverlayStroke.setStrokeWidth(mOverlayLayer.getCircleStrokeWidth(k));
+            canvas.drawCircle(mOverlayLayer.getCircleX(k), mOverlayLayer.getCircleY(k),
+                    mOverlayLayer.getCircleRadius(k), mOverlayStroke);
+        }
+        for (int k = 0; k < mOverlayLayer.getTextCount(); k++) {
+            mOverlayText.setColor(mOverlayLayer.getTextColor(k));
+            mOverlayText.setTextSize(mOverlayLayer.getTextSize(k));
+            canvas.drawText(mOverlayLayer.getText(k), mOverlayLayer.getTextX(k), mOverlayLayer.getTextY(k),
+                    mOverlayText);
+        }
+        canvas.restore();
+    }
+
     // NOTE: On Android 4.1.x the function must be called before SurfaceTexture constructor!
     protected void AllocateCache()
     {
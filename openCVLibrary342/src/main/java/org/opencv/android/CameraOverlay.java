@@ -0,0 +1,167 @@
+package org.opencv.android;
+
+import java.util.Arrays;
+
+/**
+ * A compact list of shapes and labels drawn by CameraBridgeViewBase over the camera
+ * frame, with Canvas primitives, once the frame bitmap is on the screen.
+ * Coordinates are in frame pixels, the view maps them to the scaled frame.
+ * The pipeline builds the next list between beginFrame() and publish(), from one
+ * thread at a time; the view always draws the last published list. Colors are ARGB ints as
+ * android.graphics.Color, so this class can be filled without Android classes.
+ */
+public class CameraOverlay {
+
+    private final Object mLock = new Object();
+    private Layer mBack = new Layer();
+    private Layer mFront = new Layer();
+
+    //starts the next list, the published one is still drawn meanwhile
+    public void beginFrame() {
+        mBack.clear();
+    }
+
+    public void addCircle(float x, float y, float radius, int color, float strokeWidth) {
+        mBack.addCircle(x, y, radius, color, strokeWidth);
+    }
+
+    public void addText(String text, float x, float y, float size, int color) {
+        mBack.addText(text, x, y, size, color);
+    }
+
+    //makes the list built since beginFrame() the one drawn over the next frames
+    public void publish() {
+        synchronized (mLock) {
+            Layer front = mFront;
+            mFront = mBack;
+            mBack = front;
+        }
+    }
+
+    //nothing is drawn over the next frames
+    public void clear() {
+        beginFrame();
+        publish();
+    }
+
+    /* Copies the published list into layer, so it can be drawn without holding
+     * the overlay while the pipeline publishes the next one
+     */
+    public void copyTo(Layer layer) {
+        synchronized (mLock) {
+            layer.set(mFront);
+        }
+    }
+
+    /**
+     * The shapes of one list, in parallel arrays that grow as needed and are reused
+     */
+    public static class Layer {
+        private static final int CIRCLE_FIELDS = 4;
+        private static final int TEXT_FIELDS = 3;
+
+        private int mCircleCount;
+        private float[] mCircles = new float[16 * CIRCLE_FIELDS];
+        private int[] mCircleColors = new int[16];
+
+        private int mTextCount;
+        private String[] mTexts = new String[4];
+        private float[] mTextData = new float[4 * TEXT_FIELDS];
+        private int[] mTextColors = new int[4];
+
+        public void clear() {
+            mCircleCount = 0;
+            Arrays.fill(mTexts, 0, mTextCount, null);
+            mTextCount = 0;
+        }
+
+        void addCircle(float x, float y, float radius, int color, float strokeWidth) {
+            if (mCircleCount == mCircleColors.length) {
+                mCircles = Arrays.copyOf(mCircles, 2 * mCircles.length);
+                mCircleColors = Arrays.copyOf(mCircleColors, 2 * mCircleColors.length);
+            }
+            int i = mCircleCount * CIRCLE_FIELDS;
+            mCircles[i] = x;
+            mCircles[i + 1] = y;
+            mCircles[i + 2] = radius;
+            mCircles[i + 3] = strokeWidth;
+            mCircleColors[mCircleCount++] = color;
+        }
+
+        void addText(String text, float x, float y, float size, int color) {
+            if (mTextCount == mTexts.length) {
+                mTexts = Arrays.copyOf(mTexts, 2 * mTexts.length);
+                mTextData = Arrays.copyOf(mTextData, 2 * mTextData.length);
+                mTextColors = Arrays.copyOf(mTextColors, 2 * mTextColors.length);
+            }
+            int i = mTextCount * TEXT_FIELDS;
+            mTextData[i] = x;
+            mTextData[i + 1] = y;
+            mTextData[i + 2] = size;
+            mTexts[mTextCount] = text;
+            mTextColors[mTextCount++] = color;
+        }
+
+        void set(Layer other) {
+            clear();
+            for (int k = 0; k < other.mCircleCount; k++) {
+                int i = k * CIRCLE_FIELDS;
+                addCircle(other.mCircles[i], other.mCircles[i + 1], other.mCircles[i + 2],
+                        other.mCircleColors[k], other.mCircles[i + 3]);
+            }
+            for (int k = 0; k < other.mTextCount; k++) {
+                int i = k * TEXT_FIELDS;
+                addText(other.mTexts[k], other.mTextData[i], other.mTextData[i + 1], other.mTextData[i + 2],
+                        other.mTextColors[k]);
+            }
+        }
+
+        public int getCircleCount() {
+            return mCircleCount;
+        }
+
+        public float getCircleX(int k) {
+            return mCircles[k * CIRCLE_FIELDS];
+        }
+
+        public float getCircleY(int k) {
+            return mCircles[k * CIRCLE_FIELDS + 1];
+        }
+
+        public float getCircleRadius(int k) {
+            return mCircles[k * CIRCLE_FIELDS + 2];
+        }
+
+        public float getCircleStrokeWidth(int k) {
+            return mCircles[k * CIRCLE_FIELDS + 3];
+        }
+
+        public int getCircleColor(int k) {
+            return mCircleColors[k];
+        }
+
+        public int getTextCount() {
+            return mTextCount;
+        }
+
+        public String getText(int k) {
+            return mTexts[k];
+        }
+
+        public float getTextX(int k) {
+            return mTextData[k * TEXT_FIELDS];
+        }
+
+        public float getTextY(int k) {
+            return mTextData[k * TEXT_FIELDS + 1];
+        }
+
+        public float getTextSize(int k) {
+            return mTextData[k * TEXT_FIELDS + 2];
+        }
+
+        public int getTextColor(int k) {
+            return mTextColors[k];
+        }
+    }
+}